@@ -0,0 +1,194 @@
+package scheduler.bench;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.CaregiverLoad;
+import scheduler.cache.UsernameFilter;
+import scheduler.cache.VaccineInventory;
+import scheduler.db.ConnectionManager;
+import scheduler.db.MigrationRunner;
+import scheduler.db.Transactions;
+import scheduler.util.Util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.function.IntFunction;
+
+/**
+ * A throwaway SQLite database filled with a given number of accounts, availabilities and
+ * appointments, set up the same way Scheduler.main does (migrations, then the in-memory
+ * indexes).
+ *
+ * ConnectionManager reads the database path once per JVM, so each benchmark fork can open at
+ * most one of these; JMH forks a fresh JVM per benchmark and parameter combination by default.
+ */
+public class BenchmarkDatabase {
+
+    public static final String PASSWORD = "Bench#Passw0rd";
+    public static final String VACCINE = "pfizer";
+    // availabilities and appointments are spread over this many consecutive days
+    public static final int DAYS = 30;
+    public static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final int size;
+    private final Path file;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    /**
+     * Creates the database with size patients, caregivers, availabilities and appointments.
+     * Caregiver i is free on day i % DAYS; appointment i belongs to patient (i % 10).
+     */
+    public BenchmarkDatabase(int size) throws IOException, SQLException {
+        this.size = size;
+        this.file = Files.createTempFile("scheduler-bench", ".db");
+        System.setProperty("DBPath", file.toString());
+
+        migrate();
+
+        // every account shares one password; hashing a fresh one per row would dominate setup
+        salt = Util.generateSalt();
+        hash = Util.generateHash(PASSWORD, salt);
+        seed();
+
+        loadIndexes();
+    }
+
+    /**
+     * Creates or upgrades the schema of the database DBPath points at.
+     */
+    public static void migrate() throws IOException, SQLException {
+        new MigrationRunner(ConnectionManager.SCHEMA_DIRECTORY, ConnectionManager.CREATE_SCRIPT,
+                new PrintStream(OutputStream.nullOutputStream())).migrate();
+    }
+
+    /**
+     * Loads the in-memory availability index, vaccine inventory, caregiver load table and
+     * username filters, as Scheduler does at startup.
+     */
+    public static void loadIndexes() throws SQLException {
+        AvailabilityIndex.getInstance().load();
+        CaregiverLoad.getInstance().load();
+        UsernameFilter.patients().load();
+        UsernameFilter.caregivers().load();
+        VaccineInventory.getInstance().load();
+        VaccineInventory.getInstance().startFlusher(1000);
+    }
+
+    /**
+     * Writes back pending dose changes and closes the pool, as Scheduler does on exit.
+     */
+    public static void shutdown() throws SQLException {
+        VaccineInventory.getInstance().stopFlusher();
+        VaccineInventory.getInstance().flush();
+        ConnectionManager.shutdown();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public static String patient(int i) {
+        return "patient" + i;
+    }
+
+    public static String caregiver(int i) {
+        return "caregiver" + i;
+    }
+
+    public static Date day(int i) {
+        return Date.valueOf(FIRST_DAY.plusDays(i % DAYS));
+    }
+
+    public void close() throws IOException, SQLException {
+        shutdown();
+        for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+            Files.deleteIfExists(Paths.get(file + suffix));
+        }
+    }
+
+    private void seed() throws SQLException {
+        insertAccounts("Patient", BenchmarkDatabase::patient);
+        insertAccounts("Caregivers", BenchmarkDatabase::caregiver);
+
+        Transactions.run(con -> {
+            try (PreparedStatement statement = con.prepareStatement(
+                    "INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)")) {
+                statement.setString(1, VACCINE);
+                // enough that reservations never run out during a run
+                statement.setInt(2, 1_000_000_000);
+                statement.executeUpdate();
+            }
+            return null;
+        });
+
+        inBatches("INSERT INTO Availabilities (Time, Username) VALUES (?, ?)", (statement, i) -> {
+            statement.setDate(1, day(i));
+            statement.setString(2, caregiver(i));
+        });
+
+        inBatches("INSERT INTO Appointment (AppointmentID, PatientUsername, CaregiverUsername, VaccineName, Time) " +
+                "VALUES (?, ?, ?, ?, ?)", (statement, i) -> {
+            statement.setLong(1, i + 1);
+            statement.setString(2, patient(i % 10));
+            statement.setString(3, caregiver(i));
+            statement.setString(4, VACCINE);
+            statement.setDate(5, day(i + 1));
+        });
+
+        Transactions.run(con -> {
+            try (PreparedStatement statement = con.prepareStatement(
+                    "UPDATE Sequences SET NextValue = ? WHERE Name = 'Appointment'")) {
+                statement.setLong(1, size + 1);
+                statement.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    private void insertAccounts(String table, IntFunction<String> username) throws SQLException {
+        inBatches("INSERT INTO " + table + " VALUES (?, ?, ?)", (statement, i) -> {
+            statement.setString(1, username.apply(i));
+            statement.setBytes(2, salt);
+            statement.setBytes(3, hash);
+        });
+    }
+
+    private interface Row {
+        void bind(PreparedStatement statement, int i) throws SQLException;
+    }
+
+    private void inBatches(String sql, Row row) throws SQLException {
+        for (int from = 0; from < size; from += BATCH_SIZE) {
+            int start = from;
+            int end = Math.min(size, from + BATCH_SIZE);
+            Transactions.run(con -> {
+                try (PreparedStatement statement = con.prepareStatement(sql)) {
+                    for (int i = start; i < end; i++) {
+                        row.bind(statement, i);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks once per thread count, over the given table sizes, and writes one JSON
+ * result file per thread count so runs can be compared before deploying.
+ *
+ * Usage: BenchmarkMain [--sizes 1000,10000] [--threads 1,4,16] [--results dir] [include-regex]
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        String sizes = null;
+        String threads = "1,4,16";
+        String results = "build/jmh";
+        String include = "scheduler.bench.*";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = args[++i];
+                    break;
+                case "--threads":
+                    threads = args[++i];
+                    break;
+                case "--results":
+                    results = args[++i];
+                    break;
+                default:
+                    include = args[i];
+            }
+        }
+
+        new File(results).mkdirs();
+        for (String count : threads.split(",")) {
+            int t = Integer.parseInt(count.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(t)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(results, "results-" + t + "-threads.json").getPath());
+            if (sizes != null) {
+                options.param("tableSize", sizes.split(","));
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
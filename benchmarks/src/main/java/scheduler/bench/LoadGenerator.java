@@ -0,0 +1,278 @@
+package scheduler.bench;
+
+import scheduler.metrics.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the scheduler with many simulated users at once, either in this JVM or over TCP
+ * against a scheduler started with --server, and reports throughput plus per-command latency
+ * percentiles and outcome counts.
+ *
+ * The workload is either a synthesized booking rush (see Workload.bookingRush) or a replayed
+ * trace. With a target rate, commands are released on a fixed schedule and latency is measured
+ * from each command's scheduled start, so time spent queued behind a slow server is counted
+ * instead of hidden.
+ *
+ * Usage: LoadGenerator [--server host:port] [--concurrency 16] [--rate 0] [--trace file]
+ *        [--record file] [--patients 1000] [--caregivers 20] [--days 30] [--start 2030-01-01]
+ *        [--vaccine pfizer] [--doses n] [--cancel-ratio 0.2] [--seed n] [--no-supply]
+ *
+ * In-process runs use the database DBPath points at (system property or environment), or a
+ * temporary one that is deleted afterwards.
+ */
+public class LoadGenerator {
+
+    private static final String PASSWORD = "Load#Passw0rd";
+
+    // output that means the command lost a race or hit a business rule, not a failure
+    private static final String[] CONFLICTS = {
+            "No caregiver is available", "Not enough available doses", "Username taken", "does not exist",
+    };
+    private static final String[] ERRORS = {
+            "Please try again", "failed", "Error occurred", "Invalid operation", "Please login", "Please enter",
+    };
+
+    private String server = null;
+    private int concurrency = 16;
+    private double rate = 0;
+    private Path trace = null;
+    private Path record = null;
+    private int patients = 1000;
+    private int caregivers = 20;
+    private int days = 30;
+    private LocalDate start = LocalDate.of(2030, 1, 1);
+    private String vaccine = "pfizer";
+    private int doses = -1;
+    private double cancelRatio = 0.2;
+    private long seed = System.nanoTime();
+    private boolean supply = true;
+
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong issued = new AtomicLong();
+    private long startNanos;
+    private long intervalNanos;
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        generator.parse(args);
+        generator.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--server": server = args[++i]; break;
+                case "--concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                case "--rate": rate = Double.parseDouble(args[++i]); break;
+                case "--trace": trace = Paths.get(args[++i]); break;
+                case "--record": record = Paths.get(args[++i]); break;
+                case "--patients": patients = Integer.parseInt(args[++i]); break;
+                case "--caregivers": caregivers = Integer.parseInt(args[++i]); break;
+                case "--days": days = Integer.parseInt(args[++i]); break;
+                case "--start": start = LocalDate.parse(args[++i]); break;
+                case "--vaccine": vaccine = args[++i]; break;
+                case "--doses": doses = Integer.parseInt(args[++i]); break;
+                case "--cancel-ratio": cancelRatio = Double.parseDouble(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--no-supply": supply = false; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        Workload workload = trace != null ? Workload.read(trace)
+                : Workload.bookingRush(patients, start, days, vaccine, cancelRatio, PASSWORD, seed);
+        if (record != null) {
+            workload.write(record);
+        }
+
+        Path temporary = null;
+        if (server == null) {
+            if (System.getProperty("DBPath", System.getenv("DBPath")) == null) {
+                temporary = Files.createTempFile("scheduler-load", ".db");
+                System.setProperty("DBPath", temporary.toString());
+            }
+            BenchmarkDatabase.migrate();
+            BenchmarkDatabase.loadIndexes();
+        }
+
+        try {
+            if (supply && trace == null) {
+                long setupStart = System.nanoTime();
+                // enough doses for everyone unless told otherwise, so conflicts come from caregivers
+                Workload setup = Workload.supply(caregivers, start, days, vaccine,
+                        doses >= 0 ? doses : patients, PASSWORD, seed);
+                try (SchedulerClient client = connect()) {
+                    for (List<String> script : setup.getScripts().values()) {
+                        for (String command : script) {
+                            client.execute(command);
+                        }
+                    }
+                }
+                System.out.printf("Setup: %d commands in %.2f s%n", setup.getCommandCount(),
+                        (System.nanoTime() - setupStart) / 1e9);
+            }
+
+            System.out.printf("Running %d users, %d commands, concurrency %d, %s%n",
+                    workload.getScripts().size(), workload.getCommandCount(), concurrency,
+                    rate > 0 ? "target " + rate + " commands/s" : "unthrottled");
+            long elapsed = play(workload);
+            report(elapsed);
+        } finally {
+            if (server == null) {
+                BenchmarkDatabase.shutdown();
+            }
+            if (temporary != null) {
+                for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+                    Files.deleteIfExists(Paths.get(temporary + suffix));
+                }
+            }
+        }
+    }
+
+    private SchedulerClient connect() throws IOException {
+        if (server == null) {
+            return new SchedulerClient.InProcess();
+        }
+        int colon = server.lastIndexOf(':');
+        return new SchedulerClient.Tcp(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)));
+    }
+
+    // Plays every script on concurrency worker threads; returns the wall time in nanoseconds.
+    private long play(Workload workload) throws InterruptedException {
+        Queue<List<String>> scripts = new ConcurrentLinkedQueue<>(workload.getScripts().values());
+        LongAdder failedWorkers = new LongAdder();
+        intervalNanos = rate > 0 ? (long) (1e9 / rate) : 0;
+        startNanos = System.nanoTime();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Thread worker = new Thread(() -> {
+                try (SchedulerClient client = connect()) {
+                    List<String> script;
+                    while ((script = scripts.poll()) != null) {
+                        playScript(client, script);
+                    }
+                } catch (IOException e) {
+                    failedWorkers.increment();
+                    System.out.println("Worker stopped: " + e.getMessage());
+                }
+            }, "load-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        if (failedWorkers.sum() > 0) {
+            System.out.println(failedWorkers.sum() + " of " + concurrency + " workers lost their connection");
+        }
+        return elapsed;
+    }
+
+    private void playScript(SchedulerClient client, List<String> script) throws IOException {
+        String appointment = null;
+        for (String command : script) {
+            if (command.contains(Workload.LAST_APPOINTMENT)) {
+                if (appointment == null) {
+                    continue;
+                }
+                command = command.replace(Workload.LAST_APPOINTMENT, appointment);
+            }
+
+            long begin = System.nanoTime();
+            if (intervalNanos > 0) {
+                long scheduled = startNanos + issued.getAndIncrement() * intervalNanos;
+                while (begin < scheduled) {
+                    LockSupport.parkNanos(scheduled - begin);
+                    begin = System.nanoTime();
+                }
+                begin = scheduled;
+            }
+            String output = client.execute(command);
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin);
+
+            String name = command.split(" ", 2)[0];
+            stats.computeIfAbsent(name, k -> new CommandStats()).record(micros, classify(output));
+
+            if (name.equals("reserve") && output.startsWith("Appointment ID ")) {
+                appointment = output.substring("Appointment ID ".length(), output.indexOf(','));
+            }
+        }
+        // leave the session clean for the next user on this worker
+        if (!script.isEmpty() && !script.get(script.size() - 1).equals("logout")) {
+            client.execute("logout");
+        }
+    }
+
+    private static Outcome classify(String output) {
+        for (String conflict : CONFLICTS) {
+            if (output.contains(conflict)) {
+                return Outcome.CONFLICT;
+            }
+        }
+        for (String error : ERRORS) {
+            if (output.contains(error)) {
+                return Outcome.ERROR;
+            }
+        }
+        return Outcome.OK;
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        for (CommandStats s : stats.values()) {
+            total += s.latency.getCount();
+        }
+        System.out.printf("%d commands in %.2f s (%.0f commands/s)%n", total, seconds, total / seconds);
+        System.out.printf("%-26s %8s %8s %9s %7s %9s %9s %9s %9s %9s%n",
+                "command", "count", "ok", "conflicts", "errors", "mean ms", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<String, CommandStats> entry : new TreeMap<>(stats).entrySet()) {
+            CommandStats s = entry.getValue();
+            Histogram h = s.latency;
+            System.out.printf("%-26s %8d %8d %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), h.getCount(), s.ok.sum(), s.conflicts.sum(), s.errors.sum(),
+                    h.getMean() / 1000, h.percentile(0.50) / 1000.0, h.percentile(0.99) / 1000.0,
+                    h.percentile(0.999) / 1000.0, h.getMax() / 1000.0);
+        }
+    }
+
+    private enum Outcome {
+        OK, CONFLICT, ERROR
+    }
+
+    private static class CommandStats {
+        final Histogram latency = new Histogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder conflicts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(long micros, Outcome outcome) {
+            latency.record(micros);
+            switch (outcome) {
+                case OK: ok.increment(); break;
+                case CONFLICT: conflicts.increment(); break;
+                default: errors.increment();
+            }
+        }
+    }
+}
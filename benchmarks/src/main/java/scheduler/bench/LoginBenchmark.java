@@ -0,0 +1,62 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login lookups (PatientGetter / CaregiverGetter): one keyed query plus a password hash, for a
+ * random existing account.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+
+    @Param({"1000", "10000"})
+    public int tableSize;
+
+    private BenchmarkDatabase database;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = new BenchmarkDatabase(tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public Patient patientLogin() throws SQLException {
+        String username = BenchmarkDatabase.patient(ThreadLocalRandom.current().nextInt(tableSize));
+        return new Patient.PatientGetter(username, BenchmarkDatabase.PASSWORD).get();
+    }
+
+    @Benchmark
+    public Caregiver caregiverLogin() throws SQLException {
+        String username = BenchmarkDatabase.caregiver(ThreadLocalRandom.current().nextInt(tableSize));
+        return new Caregiver.CaregiverGetter(username, BenchmarkDatabase.PASSWORD).get();
+    }
+}
@@ -0,0 +1,125 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.model.Patient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Patient commands run through Scheduler.execute exactly as a console or server session would
+ * issue them, with output captured in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    private static final String RANGE = BenchmarkDatabase.day(0) + " "
+            + BenchmarkDatabase.day(BenchmarkDatabase.DAYS - 1);
+
+    @Param({"1000", "10000"})
+    public int tableSize;
+
+    private BenchmarkDatabase database;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = new BenchmarkDatabase(tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        database.close();
+    }
+
+    /**
+     * One logged-in patient per benchmark thread. Threads spread over the seeded patients, and
+     * each books on its own day so reservations contend only when threads outnumber days.
+     */
+    @State(Scope.Thread)
+    public static class PatientSession {
+
+        private static final AtomicInteger nextThread = new AtomicInteger();
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Session session;
+        String reserve;
+
+        @Setup(Level.Trial)
+        public void login(SchedulerBenchmark benchmark) {
+            int thread = nextThread.getAndIncrement();
+            session = new Session(new PrintStream(buffer, false, StandardCharsets.UTF_8));
+            session.setCurrentPatient(new Patient.PatientBuilder(BenchmarkDatabase.patient(thread % 10),
+                    benchmark.database.getSalt(), benchmark.database.getHash()).build());
+            reserve = "reserve " + BenchmarkDatabase.day(thread) + " " + BenchmarkDatabase.VACCINE;
+        }
+
+        String execute(String command) {
+            buffer.reset();
+            Scheduler.execute(session, command);
+            session.getOut().flush();
+            return buffer.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public String searchCaregiverSchedule(PatientSession patient) {
+        int day = ThreadLocalRandom.current().nextInt(BenchmarkDatabase.DAYS);
+        return patient.execute("search_caregiver_schedule " + BenchmarkDatabase.day(day));
+    }
+
+    @Benchmark
+    public String searchCaregiverScheduleRange(PatientSession patient) {
+        return patient.execute("search_caregiver_schedule " + RANGE);
+    }
+
+    @Benchmark
+    public String showAppointmentsPage(PatientSession patient) {
+        return patient.execute("show_appointments page=50");
+    }
+
+    // every appointment of the patient, which grows with tableSize
+    @Benchmark
+    public String showAppointmentsAll(PatientSession patient) {
+        return patient.execute("show_appointments");
+    }
+
+    /**
+     * Books an appointment and cancels it again, so the availability and dose counts stay
+     * steady however long the benchmark runs.
+     */
+    @Benchmark
+    public String reserveThenCancel(PatientSession patient) {
+        String reserved = patient.execute(patient.reserve);
+        if (!reserved.startsWith("Appointment ID ")) {
+            // no caregiver left on this day: another thread holds the slot
+            return reserved;
+        }
+        String id = reserved.substring("Appointment ID ".length(), reserved.indexOf(','));
+        return patient.execute("cancel " + id);
+    }
+}
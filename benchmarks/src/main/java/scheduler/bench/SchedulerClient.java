@@ -0,0 +1,103 @@
+package scheduler.bench;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One simulated user's connection to the scheduler: sends a command line and returns the
+ * output it produced.
+ */
+public interface SchedulerClient extends AutoCloseable {
+
+    String execute(String command) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Runs commands in this JVM through Scheduler.execute with its own Session.
+     */
+    class InProcess implements SchedulerClient {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final Session session = new Session(new PrintStream(buffer, false, StandardCharsets.UTF_8));
+
+        @Override
+        public String execute(String command) {
+            buffer.reset();
+            Scheduler.execute(session, command);
+            session.getOut().flush();
+            return buffer.toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Talks to a scheduler started with --server. A response ends at the "> " prompt the server
+     * prints before reading the next command; command output never starts a line with "> ".
+     */
+    class Tcp implements SchedulerClient {
+
+        private final Socket socket;
+        private final Reader in;
+        private final OutputStream out;
+        private final StringBuilder response = new StringBuilder();
+
+        public Tcp(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+            out = socket.getOutputStream();
+            // the greeting lists the commands as "> ..." lines and ends with a blank line and the prompt
+            String greeting = "";
+            while (!greeting.endsWith("\n\n> ")) {
+                greeting = readResponse();
+            }
+        }
+
+        @Override
+        public String execute(String command) throws IOException {
+            out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String output = readResponse();
+            return output.substring(0, output.length() - 2);
+        }
+
+        // reads up to and including the next prompt, or everything left if the server hangs up
+        private String readResponse() throws IOException {
+            response.setLength(0);
+            while (true) {
+                int c = in.read();
+                if (c < 0) {
+                    if (response.length() == 0) {
+                        throw new IOException("Server closed the connection");
+                    }
+                    return response.append("> ").toString();
+                }
+                response.append((char) c);
+                int n = response.length();
+                if (n >= 2 && response.charAt(n - 2) == '>' && response.charAt(n - 1) == ' '
+                        && (n == 2 || response.charAt(n - 3) == '\n')) {
+                    return response.toString();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package scheduler.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The command scripts the load generator plays, one per simulated user. Each script runs in
+ * order on its own session.
+ *
+ * A trace file has one "<user> <command line>" per line; lines of the same user form that
+ * user's script, in file order. In a command, $appointment stands for the ID of the last
+ * appointment the user reserved, so traces with cancels can be replayed against any database.
+ */
+public class Workload {
+
+    public static final String LAST_APPOINTMENT = "$appointment";
+
+    private final Map<String, List<String>> scripts;
+
+    private Workload(Map<String, List<String>> scripts) {
+        this.scripts = scripts;
+    }
+
+    public Map<String, List<String>> getScripts() {
+        return scripts;
+    }
+
+    public int getCommandCount() {
+        int count = 0;
+        for (List<String> script : scripts.values()) {
+            count += script.size();
+        }
+        return count;
+    }
+
+    public static Workload read(Path trace) throws IOException {
+        Map<String, List<String>> scripts = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(trace, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    throw new IOException("Malformed trace line: " + line);
+                }
+                scripts.computeIfAbsent(line.substring(0, space), k -> new ArrayList<>())
+                        .add(line.substring(space + 1).trim());
+            }
+        }
+        return new Workload(scripts);
+    }
+
+    public void write(Path trace) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(trace, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, List<String>> script : scripts.entrySet()) {
+                for (String command : script.getValue()) {
+                    writer.write(script.getKey() + " " + command);
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * A booking rush: every patient signs up, logs in, searches a random day, reserves on it and
+     * cancels with the given probability.
+     */
+    public static Workload bookingRush(int patients, LocalDate firstDay, int days, String vaccine,
+                                       double cancelRatio, String password, long seed) {
+        Random random = new Random(seed);
+        // run-specific prefix so repeated runs against one database do not collide on usernames
+        String prefix = "lp" + Long.toString(seed & 0xffffff, 36) + "_";
+        Map<String, List<String>> scripts = new LinkedHashMap<>();
+        for (int i = 0; i < patients; i++) {
+            String username = prefix + i;
+            LocalDate day = firstDay.plusDays(random.nextInt(days));
+            List<String> script = new ArrayList<>();
+            script.add("create_patient " + username + " " + password);
+            script.add("login_patient " + username + " " + password);
+            script.add("search_caregiver_schedule " + day);
+            script.add("reserve " + day + " " + vaccine);
+            if (random.nextDouble() < cancelRatio) {
+                script.add("cancel " + LAST_APPOINTMENT);
+            }
+            script.add("logout");
+            scripts.put(username, script);
+        }
+        return new Workload(scripts);
+    }
+
+    /**
+     * Caregivers available on every day of the range and a stock of doses, so a booking rush has
+     * something to book. Runs as a single script before the measured load.
+     */
+    public static Workload supply(int caregivers, LocalDate firstDay, int days, String vaccine, int doses,
+                                  String password, long seed) {
+        String prefix = "lc" + Long.toString(seed & 0xffffff, 36) + "_";
+        LocalDate lastDay = firstDay.plusDays(days - 1);
+        List<String> script = new ArrayList<>();
+        for (int i = 0; i < caregivers; i++) {
+            String username = prefix + i;
+            script.add("create_caregiver " + username + " " + password);
+            script.add("login_caregiver " + username + " " + password);
+            script.add("upload_availability_range " + firstDay + " " + lastDay);
+            if (i == 0) {
+                script.add("add_doses " + vaccine + " " + doses);
+            }
+            script.add("logout");
+        }
+        Map<String, List<String>> scripts = new LinkedHashMap<>();
+        scripts.put(prefix + "setup", script);
+        return new Workload(scripts);
+    }
+}
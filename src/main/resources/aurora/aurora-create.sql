@@ -15,4 +15,22 @@ CREATE TABLE Vaccines (
     Name varchar(255),
     Doses int,
     PRIMARY KEY (Name)
-);
\ No newline at end of file
+);
+
+CREATE TABLE Patient (
+    Username varchar(255),
+    Salt BYTEA,
+    Hash BYTEA,
+    PRIMARY KEY (Username)
+);
+
+CREATE TABLE Appointment(
+    AppointmentID varchar(255) PRIMARY KEY,
+    PatientUsername varchar(255),
+    CaregiverUsername varchar(255),
+    VaccineName varchar(255),
+    Time date,
+    FOREIGN KEY (PatientUsername) REFERENCES Patient(Username),
+    FOREIGN KEY (CaregiverUsername) REFERENCES Caregivers(Username),
+    FOREIGN KEY (VaccineName) REFERENCES Vaccines(Name)
+);
@@ -0,0 +1,15 @@
+-- Converts Appointment.AppointmentID from varchar to an integer key and adds the
+-- Sequences table that the appointment ID allocator hands out blocks from.
+-- Existing appointment IDs are kept.
+
+CREATE TABLE IF NOT EXISTS Sequences (
+    Name varchar(255),
+    NextValue bigint NOT NULL,
+    PRIMARY KEY (Name)
+);
+
+ALTER TABLE Appointment ALTER COLUMN AppointmentID TYPE bigint USING AppointmentID::bigint;
+
+INSERT INTO Sequences (Name, NextValue)
+SELECT 'Appointment', COALESCE(MAX(AppointmentID), 0) + 1 FROM Appointment
+ON CONFLICT (Name) DO NOTHING;
@@ -0,0 +1,9 @@
+-- Adds the ReplicationHeartbeat table. When read endpoints are configured, the primary
+-- stamps the current time (ms since the epoch) into its single row every second; reading the
+-- row back from a replica tells how far behind that replica is.
+
+CREATE TABLE IF NOT EXISTS ReplicationHeartbeat (
+    ID int,
+    BeatAt bigint NOT NULL,
+    PRIMARY KEY (ID)
+);
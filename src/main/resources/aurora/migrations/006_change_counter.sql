@@ -0,0 +1,3 @@
+-- Nothing to do on PostgreSQL. On SQLite this version adds the ChangeCounter table the event
+-- journal checks at startup; the journal is SQLite only, since several processes share a
+-- PostgreSQL database and a single counter row would serialize all of their writes.
@@ -0,0 +1,32 @@
+-- Converts Appointment.AppointmentID from varchar to an integer key and adds the
+-- Sequences table that the appointment ID allocator hands out blocks from.
+-- Existing appointment IDs are kept.
+
+CREATE TABLE IF NOT EXISTS Sequences (
+    Name varchar(255),
+    NextValue bigint NOT NULL,
+    PRIMARY KEY (Name)
+);
+
+CREATE TABLE Appointment_new(
+    AppointmentID INTEGER PRIMARY KEY,
+    PatientUsername varchar(255),
+    CaregiverUsername varchar(255),
+    VaccineName varchar(255),
+    Time date,
+    FOREIGN KEY (PatientUsername) REFERENCES Patient(Username),
+    FOREIGN KEY (CaregiverUsername) REFERENCES Caregivers(Username),
+    FOREIGN KEY (VaccineName) REFERENCES Vaccines(Name)
+);
+
+INSERT INTO Appointment_new (AppointmentID, PatientUsername, CaregiverUsername, VaccineName, Time)
+SELECT CAST(AppointmentID AS INTEGER), PatientUsername, CaregiverUsername, VaccineName, Time
+FROM Appointment;
+
+DROP TABLE Appointment;
+
+ALTER TABLE Appointment_new RENAME TO Appointment;
+
+INSERT INTO Sequences (Name, NextValue)
+SELECT 'Appointment', COALESCE(MAX(AppointmentID), 0) + 1 FROM Appointment
+WHERE NOT EXISTS (SELECT 1 FROM Sequences WHERE Name = 'Appointment');
@@ -0,0 +1,9 @@
+-- Adds the DoseLedger table. Dose changes are appended here in the same transaction as the
+-- appointment that caused them and folded into Vaccines.Doses in the background, so the
+-- available count of a vaccine is always Vaccines.Doses plus the sum of its ledger deltas.
+
+CREATE TABLE IF NOT EXISTS DoseLedger (
+    EntryID INTEGER PRIMARY KEY AUTOINCREMENT,
+    VaccineName varchar(255) REFERENCES Vaccines(Name),
+    Delta int NOT NULL
+);
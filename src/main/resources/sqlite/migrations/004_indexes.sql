@@ -0,0 +1,13 @@
+-- Indexes for the hot read paths. show_appointments filters Appointment by patient or by
+-- caregiver and pages through the result in (Time, AppointmentID) order; the patient and
+-- caregiver indexes carry every column it reads, so those queries never touch the table.
+-- Availabilities is already keyed by (Time, Username), which serves the per-date lookups.
+
+CREATE INDEX IF NOT EXISTS idx_appointment_patient
+    ON Appointment (PatientUsername, Time, AppointmentID, VaccineName, CaregiverUsername);
+
+CREATE INDEX IF NOT EXISTS idx_appointment_caregiver
+    ON Appointment (CaregiverUsername, Time, AppointmentID, VaccineName, PatientUsername);
+
+CREATE INDEX IF NOT EXISTS idx_appointment_time
+    ON Appointment (Time, AppointmentID);
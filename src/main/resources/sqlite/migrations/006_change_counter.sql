@@ -0,0 +1,48 @@
+-- Adds the ChangeCounter table, whose single row the event journal checks instead of scanning
+-- the tables behind the in-memory indexes. Triggers count every row changed in Availabilities,
+-- Appointment, Vaccines and DoseLedger into Pending. A transaction that journals its changes
+-- first moves Pending into External and takes the next Seq, then sets Pending back to 0 as
+-- its last statement, so:
+--   Seq       one per committed journaled transaction, stamped on its journal record
+--   External  rows changed by anything else (another tool, a process without the journal)
+--   Pending   rows changed since the last journaled transaction began
+
+CREATE TABLE IF NOT EXISTS ChangeCounter (
+    ID int,
+    Seq bigint NOT NULL,
+    External bigint NOT NULL,
+    Pending bigint NOT NULL,
+    PRIMARY KEY (ID)
+);
+
+INSERT INTO ChangeCounter (ID, Seq, External, Pending)
+SELECT 1, 0, 0, 0 WHERE NOT EXISTS (SELECT 1 FROM ChangeCounter);
+
+-- each trigger body stays on one line: MigrationRunner splits statements at a ';' ending a line
+CREATE TRIGGER IF NOT EXISTS AvailabilitiesInsertCounted AFTER INSERT ON Availabilities
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS AvailabilitiesUpdateCounted AFTER UPDATE ON Availabilities
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS AvailabilitiesDeleteCounted AFTER DELETE ON Availabilities
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+
+CREATE TRIGGER IF NOT EXISTS AppointmentInsertCounted AFTER INSERT ON Appointment
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS AppointmentUpdateCounted AFTER UPDATE ON Appointment
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS AppointmentDeleteCounted AFTER DELETE ON Appointment
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+
+CREATE TRIGGER IF NOT EXISTS VaccinesInsertCounted AFTER INSERT ON Vaccines
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS VaccinesUpdateCounted AFTER UPDATE ON Vaccines
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS VaccinesDeleteCounted AFTER DELETE ON Vaccines
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+
+CREATE TRIGGER IF NOT EXISTS DoseLedgerInsertCounted AFTER INSERT ON DoseLedger
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS DoseLedgerUpdateCounted AFTER UPDATE ON DoseLedger
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
+CREATE TRIGGER IF NOT EXISTS DoseLedgerDeleteCounted AFTER DELETE ON DoseLedger
+BEGIN UPDATE ChangeCounter SET Pending = Pending + 1 WHERE ID = 1; END;
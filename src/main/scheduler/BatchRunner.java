@@ -0,0 +1,178 @@
+package scheduler;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.VaccineInventory;
+import scheduler.command.Tokenizer;
+import scheduler.db.SharedTransaction;
+import scheduler.journal.EventJournal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Set;
+
+/**
+ * Runs a script of commands without prompts, for files or pipes fed in by operations jobs.
+ *
+ * Consecutive writes that only add data (accounts, availability, doses) are grouped into one
+ * shared transaction of up to GROUP_SIZE writes, with a savepoint per command so a failing
+ * command is undone on its own. Logins and logouts do not end a group; any other command
+ * commits the group first and then runs on its own as usual. A command that throws is undone
+ * and counted as failed, and the batch goes on with the next line. Output is buffered and
+ * flushed at the end, followed by a summary.
+ */
+class BatchRunner {
+
+    private static final Set<String> GROUPED_WRITES = Set.of(
+            "create_patient", "create_caregiver", "upload_availability", "upload_availability_range", "add_doses");
+    // only change who is logged in, so they can run inside a group
+    private static final Set<String> SESSION_COMMANDS = Set.of("login_patient", "login_caregiver", "logout");
+    private static final int GROUP_SIZE = 500;
+
+    private final Session session;
+    private final PrintStream out;
+
+    private SharedTransaction group = null;
+    private int groupWrites = 0;
+
+    // counters for the summary
+    private long commands = 0;
+    private long writes = 0;
+    private long groupsCommitted = 0;
+    private long commandsUndone = 0;
+    private long commandsFailed = 0;
+    private long groupsRolledBack = 0;
+
+    BatchRunner(PrintStream out) {
+        this.out = out;
+        this.session = new Session(out);
+    }
+
+    void run(BufferedReader in) throws IOException {
+        long start = System.nanoTime();
+        String line;
+        boolean quit = false;
+        try {
+            while (!quit && (line = in.readLine()) != null) {
+                Tokenizer tokens = session.getTokenizer().tokenize(line);
+                if (tokens.size() == 0 || tokens.get(0).startsWith("#")) {
+                    continue;
+                }
+                String command = tokens.get(0);
+                commands++;
+                if (GROUPED_WRITES.contains(command)) {
+                    writes++;
+                    quit = !runGrouped(line);
+                    if (groupWrites >= GROUP_SIZE) {
+                        commitGroup();
+                    }
+                } else if (SESSION_COMMANDS.contains(command) && group != null) {
+                    quit = !runGrouped(line);
+                } else {
+                    commitGroup();
+                    quit = !runAlone(line);
+                }
+            }
+        } finally {
+            // the commands so far have reported success, so keep them even if reading fails
+            commitGroup();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.println("Batch finished: " + commands + " commands (" + writes + " writes in "
+                + groupsCommitted + " transactions) in " + String.format("%.2f", seconds) + " s ("
+                + String.format("%.0f", seconds > 0 ? commands / seconds : 0) + " commands/s)");
+        if (commandsUndone > 0 || commandsFailed > 0 || groupsRolledBack > 0) {
+            out.println("Failures: " + commandsUndone + " commands undone, " + commandsFailed
+                    + " commands failed, " + groupsRolledBack + " transactions rolled back");
+        }
+        out.flush();
+    }
+
+    // Runs one command inside the current group, opening it if needed.
+    private boolean runGrouped(String line) {
+        try {
+            if (group == null) {
+                group = SharedTransaction.begin();
+                groupWrites = 0;
+            }
+            Savepoint savepoint = group.mark();
+            group.clearFailure();
+            boolean keepGoing;
+            try {
+                keepGoing = Scheduler.execute(session, line);
+            } catch (RuntimeException e) {
+                // undo what the command wrote; the rest of the group stays
+                group.rollbackTo(savepoint);
+                commandsFailed++;
+                out.println("Please try again!");
+                reloadCaches();
+                return true;
+            }
+            if (group.hasFailed()) {
+                group.rollbackTo(savepoint);
+                commandsUndone++;
+            } else {
+                group.release(savepoint);
+            }
+            groupWrites++;
+            return keepGoing;
+        } catch (SQLException e) {
+            abortGroup(e);
+            return true;
+        }
+    }
+
+    // Runs one command outside any group.
+    private boolean runAlone(String line) {
+        try {
+            return Scheduler.execute(session, line);
+        } catch (RuntimeException e) {
+            commandsFailed++;
+            out.println("Please try again!");
+            return true;
+        }
+    }
+
+    private void commitGroup() {
+        if (group == null) {
+            return;
+        }
+        SharedTransaction committing = group;
+        group = null;
+        try {
+            // the group's journal records did not wait to be durable one by one
+            EventJournal.await(EventJournal.getInstance().sync());
+            committing.commit();
+            groupsCommitted++;
+        } catch (SQLException e) {
+            // commit() has already returned the connection, which rolls it back
+            abortGroup(e);
+        }
+    }
+
+    // The group is lost, and with it the writes the in-memory copies already show.
+    private void abortGroup(SQLException e) {
+        if (group != null) {
+            group.rollback();
+            group = null;
+        }
+        groupsRolledBack++;
+        out.println("Batch transaction rolled back: " + e.getMessage());
+        reloadCaches();
+    }
+
+    // The in-memory copies and the event journal may hold writes that were undone. Rebuild the
+    // copies, and mark the journal stale so the next start scans the tables instead.
+    private void reloadCaches() {
+        EventJournal.getInstance().markStale();
+        try {
+            AvailabilityIndex.getInstance().load();
+            VaccineInventory.getInstance().load();
+        } catch (SQLException reload) {
+            out.println("Could not reload caches: " + reload.getMessage());
+        }
+    }
+}
@@ -1,616 +1,911 @@
 package scheduler;
 
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.CaregiverLoad;
+import scheduler.cache.ScheduleCache;
+import scheduler.cache.UsernameFilter;
+import scheduler.cache.VaccineInventory;
+import scheduler.command.Command;
+import scheduler.command.CommandRegistry;
+import scheduler.command.Tokenizer;
+import scheduler.dao.AppointmentDao;
+import scheduler.dao.AppointmentRecord;
+import scheduler.dao.StorageBackend;
 import scheduler.db.ConnectionManager;
+import scheduler.db.MigrationRunner;
+import scheduler.journal.EventJournal;
+import scheduler.metrics.Metrics;
 import scheduler.model.Caregiver;
 import scheduler.model.Patient;
 import scheduler.model.Vaccine;
+import scheduler.service.BulkImporter;
+import scheduler.service.ReservationService;
 import scheduler.util.Util;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
 
 public class Scheduler {
 
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    private static final ReservationService reservations = new ReservationService();
+    private static final AvailabilityIndex availability = AvailabilityIndex.getInstance();
+    private static final VaccineInventory inventory = VaccineInventory.getInstance();
+    private static final ScheduleCache scheduleCache = ScheduleCache.getInstance();
+    private static final EventJournal journal = EventJournal.getInstance();
+    private static final Metrics metrics = Metrics.getInstance();
+
+    // every command a session can run except quit, which ends the session
+    private static final CommandRegistry commands = new CommandRegistry()
+            .register("create_patient", Scheduler::createPatient)
+            .register("create_caregiver", Scheduler::createCaregiver)
+            .register("login_patient", Scheduler::loginPatient)
+            .register("login_caregiver", Scheduler::loginCaregiver)
+            .register("search_caregiver_schedule", Scheduler::searchCaregiverSchedule)
+            .register("reserve", Scheduler::reserve)
+            .register("upload_availability", Scheduler::uploadAvailability)
+            .register("upload_availability_range", Scheduler::uploadAvailabilityRange)
+            .register("cancel", Scheduler::cancel)
+            .register("add_doses", Scheduler::addDoses)
+            .register("show_appointments", Scheduler::showAppointments)
+            .register("logout", Scheduler::logout)
+            .register("stats", (session, tokens) -> session.getOut().print(metrics.getReport()));
+
+    // how often server mode re-checks the availability index against the table
+    private static final long INDEX_CHECK_INTERVAL_SECONDS = 300;
+    // longest range upload_availability_range and search_caregiver_schedule accept
+    private static final int MAX_RANGE_DAYS = 366;
+    // rows show_appointments fetches and prints per round trip
+    private static final int SHOW_APPOINTMENTS_CHUNK = 500;
+    // how often dose changes are folded from the ledger into Vaccines
+    private static final long INVENTORY_FLUSH_INTERVAL_MS = 1000;
+    // how often metrics are appended to the file named by the MetricsFile environment variable
+    private static final long METRICS_SNAPSHOT_INTERVAL_SECONDS = 60;
 
     public static void main(String[] args) {
-        // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
+        migrateSchema();
+        checkDatabaseSettings();
+        loadIndexes();
+        startMetrics();
+
+        if (args.length == 3 && args[0].equals("--import")) {
+            // --import <patients|caregivers> <csv_file>
+            importUsers(args[1], args[2]);
+            shutdown();
+            return;
+        }
+
+        if (args.length == 2 && args[0].equals("--batch")) {
+            // --batch <file>, or - for stdin
+            runBatch(args[1]);
+            shutdown();
+            return;
+        }
+
+        // starts the replica heartbeat if ReadEndpoints is set, so replicas are ready for the first read
+        ConnectionManager.getReadRouter();
+
+        if (args.length == 2 && args[0].equals("--server")) {
+            // other processes may write to the same database, so watch for drift
+            availability.startPeriodicCheck(INDEX_CHECK_INTERVAL_SECONDS);
+            String settings = StorageBackend.getInstance().describeSettings();
+            if (settings != null) {
+                System.out.print(settings);
+            }
+            try {
+                new SchedulerServer(Integer.parseInt(args[1])).serve();
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid port: " + args[1]);
+            } catch (IOException e) {
+                System.out.println("Server stopped: " + e.getMessage());
+            } finally {
+                shutdown();
+            }
+            return;
+        }
+
+        // the console is a single session on stdin/stdout
+        Session session = new Session(System.out);
+        printGreeting(System.out);
 
         // read input from user
         BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
+        runSession(session, r);
+        shutdown();
+    }
+
+    private static void importUsers(String kind, String file) {
+        BulkImporter.Role role;
+        if (kind.startsWith("patient")) {
+            role = BulkImporter.Role.PATIENT;
+        } else if (kind.startsWith("caregiver")) {
+            role = BulkImporter.Role.CAREGIVER;
+        } else {
+            System.out.println("Usage: --import <patients|caregivers> <csv_file>");
+            return;
+        }
+        try {
+            new BulkImporter(role, System.out).importFile(Paths.get(file));
+        } catch (IOException e) {
+            System.out.println("Could not read " + file + ": " + e.getMessage());
+        } catch (SQLException e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+    }
+
+    private static void runBatch(String file) {
+        // the batch holds write transactions open; its dose changes are folded in on shutdown
+        inventory.stopFlusher();
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                false, StandardCharsets.UTF_8);
+        try (BufferedReader in = file.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            new BatchRunner(out).run(in);
+        } catch (IOException e) {
+            out.println("Could not read " + file + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            out.println("Batch stopped: " + e);
+        } finally {
+            out.flush();
+        }
+    }
+
+    // Creates the schema on a fresh database and applies any pending migrations.
+    static void migrateSchema() {
+        try {
+            new MigrationRunner(ConnectionManager.SCHEMA_DIRECTORY, ConnectionManager.CREATE_SCRIPT, System.out).migrate();
+        } catch (SQLException | IOException e) {
+            System.out.println("Schema migration failed: " + e.getMessage());
+        }
+    }
+
+    // Reads back the connection settings the backend applies and reports any that did not take effect.
+    static void checkDatabaseSettings() {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            for (String problem : StorageBackend.getInstance().checkSettings(con)) {
+                System.out.println(problem);
+            }
+        } catch (SQLException e) {
+            System.out.println("Could not check database settings: " + e.getMessage());
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // Builds the in-memory copies of hot tables. Commands fall back to queries if this fails.
+    static void loadIndexes() {
+        boolean journaling = lockJournal();
+        boolean recovered = false;
+        if (journaling) {
+            try {
+                recovered = journal.recover();
+            } catch (IOException | SQLException e) {
+                System.out.println("Could not replay event journal: " + e.getMessage());
+            }
+        }
+        if (!recovered) {
+            try {
+                availability.load();
+            } catch (SQLException e) {
+                System.out.println("Could not load availability index: " + e.getMessage());
+            }
+            try {
+                inventory.load();
+            } catch (SQLException e) {
+                System.out.println("Could not load vaccine inventory: " + e.getMessage());
+            }
+            try {
+                CaregiverLoad.getInstance().load();
+            } catch (SQLException e) {
+                System.out.println("Could not load caregiver load table: " + e.getMessage());
+            }
+        }
+        if (inventory.isLoaded()) {
+            inventory.startFlusher(INVENTORY_FLUSH_INTERVAL_MS);
+        }
+        try {
+            UsernameFilter.patients().load();
+            UsernameFilter.caregivers().load();
+        } catch (SQLException e) {
+            System.out.println("Could not load username filters: " + e.getMessage());
+        }
+        if (journaling) {
+            openJournal();
+        }
+    }
+
+    // Takes the event journal's lock if JournalPath is set; false if journaling is off.
+    private static boolean lockJournal() {
+        if (!journal.isEnabled()) {
+            return false;
+        }
+        if (StorageBackend.getInstance().changes() == null) {
+            System.out.println("Event journal needs the sqlite backend, running without it");
+            return false;
+        }
+        try {
+            if (journal.lock()) {
+                return true;
+            }
+            System.out.println("Event journal is in use by another process, running without it");
+        } catch (IOException e) {
+            System.out.println("Could not lock event journal: " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Starts this run's journal from the loaded indexes; a journal of partial indexes would be wrong.
+    private static void openJournal() {
+        if (!availability.isLoaded() || !inventory.isLoaded() || !CaregiverLoad.getInstance().isLoaded()) {
+            System.out.println("Event journal disabled: the indexes could not be loaded");
+            return;
+        }
+        try {
+            journal.open();
+        } catch (IOException | SQLException | RuntimeException e) {
+            System.out.println("Could not open event journal: " + e.getMessage());
+        }
+    }
+
+    // Publishes the metrics MBean and, if MetricsFile is set, starts periodic snapshots to it.
+    static void startMetrics() {
+        metrics.registerMBean();
+        String file = System.getenv("MetricsFile");
+        if (file != null && !file.isEmpty()) {
+            metrics.startSnapshots(Paths.get(file), METRICS_SNAPSHOT_INTERVAL_SECONDS);
+        }
+    }
+
+    // Persists what is still only in memory or in the ledger, then closes the pool.
+    static void shutdown() {
+        metrics.stopSnapshots();
+        String file = System.getenv("MetricsFile");
+        if (file != null && !file.isEmpty()) {
+            metrics.writeSnapshot(Paths.get(file));
+        }
+        inventory.stopFlusher();
+        try {
+            inventory.flush();
+        } catch (SQLException e) {
+            // the ledger is folded on the next start
+        }
+        ConnectionManager.shutdown();
+        // after the write pipeline has drained, whose last writes still append to it
+        journal.close();
+    }
+
+    static void printGreeting(PrintStream out) {
+        // printing greetings text
+        out.println();
+        out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        out.println("*** Please enter one of the following commands ***");
+        out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
+        out.println("> create_caregiver <username> <password>");
+        out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
+        out.println("> login_caregiver <username> <password>");
+        out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
+        out.println("> search_caregiver_schedule <start_date> <end_date> [<max_dates>]");
+        out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
+        out.println("> upload_availability <date>");
+        out.println("> upload_availability_range <start_date> <end_date> [<weekdays>, e.g. mon,wed,fri]");
+        out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
+        out.println("> add_doses <vaccine> <number>");
+        out.println("> show_appointments [page=<size>] [after=<cursor>] [from=<date>] [to=<date>]");  // TODO: implement show_appointments (Part 2)
+        out.println("> logout");  // TODO: implement logout (Part 2)
+        out.println("> stats");
+        out.println("> quit");
+        out.println();
+    }
+
+    /**
+     * Reads and runs commands for one session until it quits or its input ends.
+     */
+    static void runSession(Session session, BufferedReader r) {
+        PrintStream out = session.getOut();
         while (true) {
-            System.out.print("> ");
+            out.print("> ");
+            out.flush();
             String response = "";
             try {
                 response = r.readLine();
             } catch (IOException e) {
-                System.out.println("Please try again!");
+                out.println("Please try again!");
             }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
-                continue;
-            }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
+            // end of input, e.g. the client disconnected
+            if (response == null) {
                 return;
-            } else {
-                System.out.println("Invalid operation name!");
+            }
+            try {
+                if (!execute(session, response)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // a bug in one command must not end the session or drop the client
+                out.println("Please try again!");
             }
         }
     }
 
-    private static void createPatient(String[] tokens) {
-        if (tokens.length != 3) {
-            System.out.println("Create patient failed");
+    /**
+     * Runs one command line for the given session. Returns false once the session asked to quit.
+     */
+    public static boolean execute(Session session, String response) {
+        PrintStream out = session.getOut();
+        Tokenizer tokens = session.getTokenizer().tokenize(response);
+        // check if input exists
+        if (tokens.size() == 0) {
+            out.println("Please try again!");
+            return true;
+        }
+        if (tokens.is(0, "quit")) {
+            out.println("Bye!");
+            return false;
+        }
+        // determine which operation to perform
+        String operation = tokens.get(0);
+        Command command = commands.get(operation);
+        long start = System.nanoTime();
+        if (command != null) {
+            command.execute(session, tokens);
+        } else {
+            out.println("Invalid operation name!");
+        }
+        // unknown input is lumped together so it cannot grow the metrics without bound
+        metrics.recordCommand(command != null ? operation : "(invalid)", System.nanoTime() - start);
+        return true;
+    }
+
+    private static void createPatient(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
+        if (tokens.size() != 3) {
+            out.println("Create patient failed");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
         
-        if (!isStrongPassword(password)) {
-            System.out.println("Create patient failed, please use a strong password (8+ char, at least one upper and one lower, at least one letter and one number, and at least one special character, from \"!\", \"@\", \"#\", \"?\")");
+        if (!Util.isStrongPassword(password)) {
+            out.println("Create patient failed, please use a strong password (8+ char, at least one upper and one lower, at least one letter and one number, and at least one special character, from \"!\", \"@\", \"#\", \"?\")");
             return;
         }
 
 
-        if (usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again");
+        if (usernameExistsPatient(session, username)) {
+            out.println("Username taken, try again");
             return;
         }
 
 
-        byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        // hashed on the shared hashing pool, which bounds how many hashes run at once
+        byte[][] credentials = Util.generateCredentialsAsync(password).join();
+        byte[] salt = credentials[0];
+        byte[] hash = credentials[1];
         
         try {
             Patient patient = new Patient.PatientBuilder(username, salt, hash).build(); 
             // save to caregiver information to our database
             patient.saveToDB();
-            System.out.println("Created user " + username);
+            out.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Create patient failed.");
+            out.println("Create patient failed.");
         }
 
     }
 
-    private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Patient WHERE Username = ?";
+    private static boolean usernameExistsPatient(Session session, String username) {
+        PrintStream out = session.getOut();
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            return UsernameFilter.patients().exists(username);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
-        } finally {
-            cm.closeConnection();
+            out.println("Error occurred when checking username");
         }
         return true;
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private static void createCaregiver(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
         // create_caregiver <username> <password>
         // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
+        if (tokens.size() != 3) {
+            out.println("Failed to create user.");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
         // check 2: check if the username has been taken already
 
-        if (!isStrongPassword(password)) {
-            System.out.println("Create caregiver failed, please use a strong password (8+ char, at least one upper and one lower, at least one letter and one number, and at least one special character, from \"!\", \"@\", \"#\", \"?\")");
+        if (!Util.isStrongPassword(password)) {
+            out.println("Create caregiver failed, please use a strong password (8+ char, at least one upper and one lower, at least one letter and one number, and at least one special character, from \"!\", \"@\", \"#\", \"?\")");
             return;
         }
 
-        if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
+        if (usernameExistsCaregiver(session, username)) {
+            out.println("Username taken, try again!");
             return;
         }
-        byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        // hashed on the shared hashing pool, which bounds how many hashes run at once
+        byte[][] credentials = Util.generateCredentialsAsync(password).join();
+        byte[] salt = credentials[0];
+        byte[] hash = credentials[1];
         // create the caregiver
         try {
             Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build(); 
             // save to caregiver information to our database
             caregiver.saveToDB();
-            System.out.println("Created user " + username);
+            out.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Failed to create user.");
+            out.println("Failed to create user.");
         }
     }
 
-    private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
+    private static boolean usernameExistsCaregiver(Session session, String username) {
+        PrintStream out = session.getOut();
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            return UsernameFilter.caregivers().exists(username);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
-        } finally {
-            cm.closeConnection();
+            out.println("Error occurred when checking username");
         }
         return true;
     }
 
 
-    private static boolean isStrongPassword(String password) {
-
-        if (password.length() < 8) {
-            return false;
-        }
-    
-        boolean hasUpper = false;
-        boolean hasLower = false;
-        boolean hasNumber = false;
-        boolean hasSpecial = false;
-        
-        String specialCharacters = "!@#?";
-    
-
-        for (int i = 0; i < password.length(); i++) {
-            char ch = password.charAt(i);
-    
-            if (Character.isUpperCase(ch)) {
-                hasUpper = true;
-            } else if (Character.isLowerCase(ch)) {
-                hasLower = true;
-            } else if (Character.isDigit(ch)) {
-                hasNumber = true;
-            } else if (specialCharacters.indexOf(ch) != -1) { 
-                hasSpecial = true;
-            }
-        }
-    
-        
-        return hasUpper && hasLower && hasNumber && hasSpecial;
-    }
-
-    private static void loginPatient(String[] tokens) {
+    private static void loginPatient(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
         // TODO: Part 1
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in, try again");
+        if (session.getCurrentCaregiver() != null || session.getCurrentPatient() != null) {
+            out.println("User already logged in, try again");
             return;
         }
         
-        if (tokens.length != 3) {
-            System.out.println("Login patient failed");
+        if (tokens.size() != 3) {
+            out.println("Login patient failed");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
 
         Patient patient = null;
         try {
             patient = new Patient.PatientGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login patient failed");
+            out.println("Login patient failed");
         }
         
         if (patient == null) {
-            System.out.println("Login patient failed");
+            out.println("Login patient failed");
         } else {
-            System.out.println("Logged in as " + username);
-            currentPatient = patient;
+            out.println("Logged in as " + username);
+            session.setCurrentPatient(patient);
         }
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private static void loginCaregiver(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
         // login_caregiver <username> <password>
         // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in, try again");
+        if (session.getCurrentCaregiver() != null || session.getCurrentPatient() != null) {
+            out.println("User already logged in, try again");
             return;
         }
         
-        if (tokens.length != 3) {
-            System.out.println("Login failed.");
+        if (tokens.size() != 3) {
+            out.println("Login failed.");
             return;
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = tokens.get(1);
+        String password = tokens.get(2);
 
         Caregiver caregiver = null;
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            out.println("Login failed.");
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Login failed.");
+            out.println("Login failed.");
         } else {
-            System.out.println("Logged in as: " + username);
-            currentCaregiver = caregiver;
+            out.println("Logged in as: " + username);
+            session.setCurrentCaregiver(caregiver);
         }
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
+    private static void searchCaregiverSchedule(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
         // TODO: Part 2
-        if(currentCaregiver == null && currentPatient == null){
-            System.out.println("Please login first");
+        if(session.getCurrentCaregiver() == null && session.getCurrentPatient() == null){
+            out.println("Please login first");
+            return;
+        }
+
+        if(tokens.size() == 3 || tokens.size() == 4){
+            searchCaregiverScheduleRange(session, tokens);
             return;
         }
 
-        if(tokens.length != 2){
-            System.out.println("Please try again");
+        if(tokens.size() != 2){
+            out.println("Please try again");
             return;
         }
 
-        String date = tokens[1];
+        String date = tokens.get(1);
         Date d;
 
         try{
             d = Date.valueOf(date);
             
         }catch(IllegalArgumentException e){
-            System.out.println("Please try again");
+            out.println("Please try again");
             return;
         }
 
+        // only needed if one of the in-memory copies is unavailable; read-only, so a replica will do
         ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String checkCaregivers = "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username ASC";
-
-        String checkVaccines = "SELECT Name, Doses FROM Vaccines ORDER BY Name ASC";
+        Connection con = availability.isLoaded() && inventory.isLoaded() ? null
+                : cm.createReadConnection(session.getLastWriteAt());
+        // what a lagging replica returned may already be outdated, so only keep primary reads
+        boolean cacheable = !cm.isOnReplica();
 
         try{
-          PreparedStatement caregiverStatement = con.prepareStatement(checkCaregivers);
-          caregiverStatement.setDate(1, d); 
-          ResultSet listOfCaregivers = caregiverStatement.executeQuery();
-
-
-          System.out.println("Caregivers:");
-          boolean hasCaregivers = false;
-        
-          while(listOfCaregivers.next()){
-            hasCaregivers = true;
-            System.out.println(listOfCaregivers.getString("Username"));
-
-            
-          }
-
-          if(!hasCaregivers){
-            System.out.println("No caregivers available");
-          }
-
-          caregiverStatement.close();
-          listOfCaregivers.close();
-
-
-          PreparedStatement vacStatement = con.prepareStatement(checkVaccines);
-
-          ResultSet listOfVaccines = vacStatement.executeQuery();
-
-          System.out.println("Vaccines:");
-
-          boolean hasVaccines = false;
-
-          while(listOfVaccines .next()){
-            hasVaccines = true;
-            String vacName = (listOfVaccines.getString("Name"));
-            int numDoses = (listOfVaccines.getInt("Doses"));
-            System.out.println(vacName + " " + numDoses);
-          }
-
-          if(!hasVaccines){
-            System.out.println("No vaccines available");
-          }
-
-          vacStatement.close();
-          listOfVaccines.close();
-
+          out.print(scheduleCache.caregivers(d.toLocalDate(), cacheable, () -> {
+            StringBuilder text = new StringBuilder("Caregivers:\n");
+            boolean hasCaregivers = false;
+
+            if(availability.isLoaded()){
+              // answered from memory, the index mirrors Availabilities
+              for(String username : availability.caregivers(d)){
+                hasCaregivers = true;
+                text.append(username).append('\n');
+              }
+            }else{
+              for(String username : StorageBackend.getInstance().availabilities().findCaregivers(con, d)){
+                hasCaregivers = true;
+                text.append(username).append('\n');
+              }
+            }
 
+            if(!hasCaregivers){
+              text.append("No caregivers available\n");
+            }
+            return text.toString();
+          }));
 
+          printVaccines(out, con, cacheable);
 
         }catch (SQLException e){
-           System.out.println("Please try again");
+           out.println("Please try again");
         }finally{
             cm.closeConnection();
         }
-            
+    }
 
+    // search_caregiver_schedule <start_date> <end_date> [<max_dates>]
+    private static void searchCaregiverScheduleRange(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
+        Date start;
+        Date end;
+        int maxDates = Integer.MAX_VALUE;
+        try {
+            start = Date.valueOf(tokens.get(1));
+            end = Date.valueOf(tokens.get(2));
+            if (tokens.size() == 4) {
+                maxDates = Integer.parseInt(tokens.get(3));
+            }
+        } catch (IllegalArgumentException e) {
+            out.println("Please try again");
+            return;
+        }
+        if (maxDates <= 0 || end.before(start)
+                || ChronoUnit.DAYS.between(start.toLocalDate(), end.toLocalDate()) >= MAX_RANGE_DAYS) {
+            out.println("Please try again");
+            return;
+        }
 
+        // only needed if one of the in-memory copies is unavailable; read-only, so a replica will do
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = availability.isLoaded() && inventory.isLoaded() ? null
+                : cm.createReadConnection(session.getLastWriteAt());
 
+        try {
+            StringBuilder buffer = new StringBuilder();
+            int dates = 0;
+
+            if (availability.isLoaded()) {
+                for (Map.Entry<LocalDate, NavigableSet<String>> day : availability.range(start, end).entrySet()) {
+                    if (dates == maxDates) {
+                        break;
+                    }
+                    dates++;
+                    buffer.append("Caregivers on ").append(day.getKey()).append(":\n");
+                    for (String username : day.getValue()) {
+                        buffer.append(username).append('\n');
+                    }
+                }
+            } else {
+                // one range query that stops after the first maxDates dates with availability
+                Map<Date, List<String>> range =
+                        StorageBackend.getInstance().availabilities().findRange(con, start, end, maxDates);
+                for (Map.Entry<Date, List<String>> day : range.entrySet()) {
+                    dates++;
+                    buffer.append("Caregivers on ").append(day.getKey()).append(":\n");
+                    for (String username : day.getValue()) {
+                        buffer.append(username).append('\n');
+                    }
+                }
+            }
 
+            if (dates == 0) {
+                out.println("No caregivers available");
+            } else {
+                out.print(buffer);
+            }
+            printVaccines(out, con, !cm.isOnReplica());
+        } catch (SQLException e) {
+            out.println("Please try again");
+        } finally {
+            cm.closeConnection();
+        }
     }
 
-    private static void reserve(String[] tokens) {
-       if(currentPatient == null){
-            if(currentCaregiver != null){
-                System.out.println("Please login as a patient");
+    // Prints the stock of every vaccine, from the schedule cache or else from memory if the
+    // inventory is loaded.
+    private static void printVaccines(PrintStream out, Connection con, boolean cacheable) throws SQLException {
+        out.print(scheduleCache.vaccines(cacheable, () -> {
+            StringBuilder text = new StringBuilder("Vaccines:\n");
+            boolean hasVaccines = false;
+
+            if(inventory.isLoaded()){
+                for(Map.Entry<String, Integer> vaccine : inventory.snapshot().entrySet()){
+                    hasVaccines = true;
+                    text.append(vaccine.getKey()).append(' ').append(vaccine.getValue()).append('\n');
+                }
             }else{
-                System.out.println("Please login first");
+                for(Map.Entry<String, Integer> vaccine : StorageBackend.getInstance().vaccines().findAll(con).entrySet()){
+                    hasVaccines = true;
+                    text.append(vaccine.getKey()).append(' ').append(vaccine.getValue()).append('\n');
+                }
+            }
+
+            if(!hasVaccines){
+                text.append("No vaccines available\n");
+            }
+            return text.toString();
+        }));
+    }
+
+    private static void reserve(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
+       if(session.getCurrentPatient() == null){
+            if(session.getCurrentCaregiver() != null){
+                out.println("Please login as a patient");
+            }else{
+                out.println("Please login first");
             }
             return;
        }
 
-       if(tokens.length != 3 ){
-            System.out.println("Please try again");
+       if(tokens.size() != 3 ){
+            out.println("Please try again");
             return;
         }
 
 
-       String date = tokens[1];
-       String vaccineName = tokens[2];
+       String date = tokens.get(1);
+       String vaccineName = tokens.get(2);
        Date d;
 
        try {
             d = Date.valueOf(date); 
         } catch (IllegalArgumentException e) {
-            System.out.println("Please try again"); 
+            out.println("Please try again"); 
             return;
         }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
         try{
-            String caregiverQuery = "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username ASC LIMIT 1";
-            PreparedStatement caregiverStatement = con.prepareStatement(caregiverQuery);
-            caregiverStatement.setDate(1, d);
-            ResultSet caregiverResult = caregiverStatement.executeQuery();
-
-            String selectedCaregiver = null;
-
-            if(caregiverResult.next()){
-                selectedCaregiver = caregiverResult.getString("Username");
-            }else{
-                System.out.println("No caregiver is available");
-                caregiverStatement.close();
-                caregiverResult.close();
-                cm.closeConnection();
-                return;
-            }
-
-            caregiverStatement.close();
-            caregiverResult.close();
-
-
-            Vaccine vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-            if (vaccine == null || vaccine.getAvailableDoses() <= 0) {
-                System.out.println("Not enough available doses");
-                cm.closeConnection();
-                return;
+            ReservationService.Result result = reservations.reserve(session.getCurrentPatient().getUsername(), d, vaccineName);
+            switch (result.getStatus()) {
+                case NO_CAREGIVER:
+                    out.println("No caregiver is available");
+                    break;
+                case NO_DOSES:
+                    out.println("Not enough available doses");
+                    break;
+                default:
+                    session.recordWrite();
+                    out.println("Appointment ID " + result.getAppointmentId() + ", Caregiver username " + result.getCaregiverUsername());
             }
-
-
-            String appointmentIdQuery = "SELECT MAX(AppointmentID) AS MaxID FROM Appointment";
-            PreparedStatement idStatement = con.prepareStatement(appointmentIdQuery);
-            ResultSet idResult = idStatement.executeQuery();
-            int appointmentID = 1;
-            if (idResult.next() && idResult.getObject("MaxID") != null) { // Handle NULL safely
-                appointmentID = idResult.getInt("MaxID") + 1;
-            }
-
-            idStatement.close();
-            idResult.close();
-
-            
-
-
-            String insertAppointment = "INSERT INTO Appointment (AppointmentID, PatientUsername, CaregiverUsername, VaccineName, Time) VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement insertStmt = con.prepareStatement(insertAppointment);
-            insertStmt.setInt(1, appointmentID);
-            insertStmt.setString(2, currentPatient.getUsername());
-            insertStmt.setString(3, selectedCaregiver);
-            insertStmt.setString(4, vaccineName);
-            insertStmt.setDate(5, d);
-            insertStmt.executeUpdate();
-            insertStmt.close();
-
-
-            vaccine.decreaseAvailableDoses(1);
-
-
-            String removeAvailability = "DELETE FROM Availabilities WHERE Username = ? AND Time = ?";
-            PreparedStatement removeStatement = con.prepareStatement(removeAvailability);
-            removeStatement.setString(1, selectedCaregiver);
-            removeStatement.setDate(2, d);
-            removeStatement.executeUpdate();
-            removeStatement.close();
-
-
-            System.out.println("Appointment ID " + appointmentID + ", Caregiver username " + selectedCaregiver);
-
-
-
-
         }catch(SQLException e){
-            System.out.println("Please try again");
-        }finally{
-            cm.closeConnection();
+            out.println("Please try again");
         }
 
 
     }
-
-    private static void uploadAvailability(String[] tokens) {
+    private static void uploadAvailability(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
         // upload_availability <date>
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.getCurrentCaregiver() == null) {
+            out.println("Please login as a caregiver first!");
             return;
         }
         // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
+        if (tokens.size() != 2) {
+            out.println("Please try again!");
             return;
         }
-        String date = tokens[1];
+        String date = tokens.get(1);
         try {
             Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
+            session.getCurrentCaregiver().uploadAvailability(d);
+            out.println("Availability uploaded!");
         } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            out.println("Please enter a valid date!");
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            out.println("Error occurred when uploading availability");
         }
     }
 
-    private static void cancel(String[] tokens) {
+    private static void uploadAvailabilityRange(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
+        // upload_availability_range <start_date> <end_date> [<weekdays>]
+        if (session.getCurrentCaregiver() == null) {
+            out.println("Please login as a caregiver first!");
+            return;
+        }
+        if (tokens.size() != 3 && tokens.size() != 4) {
+            out.println("Please try again!");
+            return;
+        }
+        LocalDate start;
+        LocalDate end;
+        try {
+            start = Date.valueOf(tokens.get(1)).toLocalDate();
+            end = Date.valueOf(tokens.get(2)).toLocalDate();
+        } catch (IllegalArgumentException e) {
+            out.println("Please enter a valid date!");
+            return;
+        }
+        if (end.isBefore(start) || ChronoUnit.DAYS.between(start, end) >= MAX_RANGE_DAYS) {
+            out.println("Please enter a range of at most " + MAX_RANGE_DAYS + " days!");
+            return;
+        }
+        Set<DayOfWeek> weekdays = EnumSet.allOf(DayOfWeek.class);
+        if (tokens.size() == 4) {
+            weekdays = parseWeekdays(tokens.get(3));
+            if (weekdays == null) {
+                out.println("Please enter weekdays like mon,wed,fri!");
+                return;
+            }
+        }
+
+        List<Date> dates = new ArrayList<>();
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            if (weekdays.contains(day.getDayOfWeek())) {
+                dates.add(Date.valueOf(day));
+            }
+        }
+        if (dates.isEmpty()) {
+            out.println("No dates in range match the given weekdays");
+            return;
+        }
+
+        try {
+            int inserted = session.getCurrentCaregiver().uploadAvailability(dates);
+            out.println("Availability uploaded! " + inserted + " added, "
+                    + (dates.size() - inserted) + " already present");
+        } catch (SQLException e) {
+            out.println("Error occurred when uploading availability");
+        }
+    }
+
+    // "mon,tue" -> {MONDAY, TUESDAY}; null if any name is not a weekday
+    private static Set<DayOfWeek> parseWeekdays(String list) {
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (String name : list.split(",")) {
+            DayOfWeek match = null;
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (name.length() >= 3 && day.name().startsWith(name.toUpperCase())) {
+                    match = day;
+                }
+            }
+            if (match == null) {
+                return null;
+            }
+            days.add(match);
+        }
+        return days;
+    }
+
+    private static void cancel(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
         // TODO: Extra credit
 
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first");
+        if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+            out.println("Please login first");
             return;
         }
     
         
-        if (tokens.length != 2) {
-            System.out.println("Please try again");
+        if (tokens.size() != 2) {
+            out.println("Please try again");
             return;
         }
     
-        int appointmentId;
+        long appointmentId;
         try {
-            appointmentId = Integer.parseInt(tokens[1]);
+            appointmentId = Long.parseLong(tokens.get(1));
         } catch (NumberFormatException e) {
-            System.out.println("Please try again");
+            out.println("Please try again");
             return;
         }
     
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-    
         try {
-           
-            String query = "SELECT Time, VaccineName, CaregiverUsername FROM Appointment WHERE AppointmentID = ?";
-            PreparedStatement statement = con.prepareStatement(query);
-            statement.setInt(1, appointmentId);
-            ResultSet rs = statement.executeQuery();
-    
-            if (!rs.next()) {
-                System.out.println("Appointment ID " + appointmentId + " does not exist");
-                statement.close();
-                rs.close();
-                cm.closeConnection();
+            ReservationService.Result result = reservations.cancel(appointmentId);
+            if (result.getStatus() == ReservationService.Status.NOT_FOUND) {
+                out.println("Appointment ID " + appointmentId + " does not exist");
                 return;
             }
+            session.recordWrite();
     
-            Date appointmentDate = rs.getDate("Time");
-            String vaccineName = rs.getString("VaccineName");
-            String caregiverUsername = rs.getString("CaregiverUsername");
-    
-            statement.close();
-            rs.close();
-    
-            
-            String deleteAppointment = "DELETE FROM Appointment WHERE AppointmentID = ?";
-            PreparedStatement deleteStmt = con.prepareStatement(deleteAppointment);
-            deleteStmt.setInt(1, appointmentId);
-            deleteStmt.executeUpdate();
-            deleteStmt.close();
-    
-            
-            String restoreCaregiver = "INSERT INTO Availabilities (Username, Time) VALUES (?, ?)";
-            PreparedStatement restoreStmt = con.prepareStatement(restoreCaregiver);
-            restoreStmt.setString(1, caregiverUsername);
-            restoreStmt.setDate(2, appointmentDate);
-            restoreStmt.executeUpdate();
-            restoreStmt.close();
-    
-            
-            Vaccine vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-            if (vaccine != null) {
-                vaccine.increaseAvailableDoses(1);
-            }
-    
-            System.out.println("Appointment ID " + appointmentId + " has been successfully canceled");
+            out.println("Appointment ID " + appointmentId + " has been successfully canceled");
     
         } catch (SQLException e) {
-            System.out.println("Please try again");
-        } finally {
-            cm.closeConnection();
+            out.println("Please try again");
         }
     
     }
-
-    private static void addDoses(String[] tokens) {
+    private static void addDoses(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
         // add_doses <vaccine> <number>
         // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+        if (session.getCurrentCaregiver() == null) {
+            out.println("Please login as a caregiver first!");
             return;
         }
         // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        if (tokens.size() != 3) {
+            out.println("Please try again!");
+            return;
+        }
+        String vaccineName = tokens.get(1);
+        int doses;
+        try {
+            doses = Integer.parseInt(tokens.get(2));
+        } catch (NumberFormatException e) {
+            out.println("Please try again!");
+            return;
+        }
+        if (doses <= 0) {
+            out.println("Please try again!");
             return;
         }
-        String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
         Vaccine vaccine = null;
         try {
             vaccine = new Vaccine.VaccineGetter(vaccineName).get();
         } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
+            out.println("Error occurred when adding doses");
         }
         // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
         //          table
@@ -619,98 +914,131 @@ public class Scheduler {
                 vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
                 vaccine.saveToDB();
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
+                out.println("Error occurred when adding doses");
             }
         } else {
             // if the vaccine is not null, meaning that the vaccine already exists in our table
             try {
                 vaccine.increaseAvailableDoses(doses);
             } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
+                out.println("Error occurred when adding doses");
             }
         }
-        System.out.println("Doses updated!");
+        out.println("Doses updated!");
     }
 
-    private static void showAppointments(String[] tokens) {
-        // TODO: Part 2
+    private static void showAppointments(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
+        // show_appointments [page=<size>] [after=<cursor>] [from=<date>] [to=<date>]
 
-        if(currentPatient == null && currentCaregiver == null ){
-            System.out.println("Please login first");
+        if(session.getCurrentPatient() == null && session.getCurrentCaregiver() == null ){
+            out.println("Please login first");
             return;
         }
 
-        if (tokens.length != 1) {  
-            System.out.println("Please try again");
+        int pageSize = 0;  // 0 means no limit
+        Date afterTime = null;
+        long afterId = 0;
+        Date from = null;
+        Date to = null;
+        try {
+            for (int i = 1; i < tokens.size(); i++) {
+                String option = tokens.get(i);
+                if (option.startsWith("page=")) {
+                    pageSize = Integer.parseInt(option.substring(5));
+                    if (pageSize <= 0) {
+                        throw new IllegalArgumentException();
+                    }
+                } else if (option.startsWith("after=")) {
+                    // cursor printed at the end of the previous page: <date>/<appointment_id>
+                    String cursor = option.substring(6);
+                    int slash = cursor.indexOf('/');
+                    afterTime = Date.valueOf(cursor.substring(0, slash));
+                    afterId = Long.parseLong(cursor.substring(slash + 1));
+                } else if (option.startsWith("from=")) {
+                    from = Date.valueOf(option.substring(5));
+                } else if (option.startsWith("to=")) {
+                    to = Date.valueOf(option.substring(3));
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            out.println("Please try again");
             return;
         }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String query;
-        String user;
-
-        if(currentPatient != null){
-            query = "SELECT AppointmentID, VaccineName, Time, CaregiverUsername FROM Appointment WHERE PatientUsername = ? ORDER BY AppointmentID ASC";
-            user = currentPatient.getUsername();
-        }else{
-            query = "SELECT AppointmentID, VaccineName, Time, PatientUsername FROM Appointment WHERE CaregiverUsername = ? ORDER BY AppointmentID ASC";
-            user = currentCaregiver.getUsername();
-        }
+        boolean ofPatient = session.getCurrentPatient() != null;
+        String user = ofPatient ? session.getCurrentPatient().getUsername() : session.getCurrentCaregiver().getUsername();
+        AppointmentDao appointments = StorageBackend.getInstance().appointments();
 
+        // read-only, so a replica will do once it shows this session's own bookings
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createReadConnection(session.getLastWriteAt());
 
         try{
-            PreparedStatement statement = con.prepareStatement(query);
-            statement.setString(1, user);
-            ResultSet resultSet = statement.executeQuery();
-
-
+            int remaining = pageSize == 0 ? Integer.MAX_VALUE : pageSize;
             boolean hasAppointments = false;
-
-            while(resultSet.next()){
-                hasAppointments = true;
-                int appointmentID = resultSet.getInt("AppointmentID");
-                String vaccineName = resultSet.getString("VaccineName");
-                Date appointmentDate = resultSet.getDate("Time");
-                String otherUser = resultSet.getString(4);
-
-                System.out.println(appointmentID + " " + vaccineName + " " + appointmentDate + " " + otherUser);
+            boolean hasMore = false;
+            StringBuilder buffer = new StringBuilder();
+
+            while (remaining > 0) {
+                // one extra row tells us whether there is a next page
+                int chunk = Math.min(remaining, SHOW_APPOINTMENTS_CHUNK);
+                List<AppointmentRecord> rows = appointments.findPage(con, ofPatient, user, from, to,
+                        afterTime, afterId, chunk + 1);
+                hasMore = rows.size() > chunk;
+                int shown = Math.min(rows.size(), chunk);
+                for (AppointmentRecord appointment : rows.subList(0, shown)) {
+                    hasAppointments = true;
+                    String otherUser = ofPatient ? appointment.getCaregiverUsername() : appointment.getPatientUsername();
+                    buffer.append(appointment.getAppointmentId()).append(' ').append(appointment.getVaccineName())
+                            .append(' ').append(appointment.getDate()).append(' ').append(otherUser).append('\n');
+                    afterTime = appointment.getDate();
+                    afterId = appointment.getAppointmentId();
+                }
+
+                // write each chunk out in one go instead of a println per row
+                out.print(buffer);
+                buffer.setLength(0);
+                remaining -= shown;
+                if (!hasMore) {
+                    break;
+                }
             }
 
             if (!hasAppointments) {
-                System.out.println("No appointments scheduled");
+                out.println("No appointments scheduled");
+            } else if (hasMore && pageSize > 0) {
+                out.println("More appointments: show_appointments page=" + pageSize + " after=" + afterTime + "/" + afterId);
             }
 
-            resultSet.close();
-            statement.close();
-
         }catch (SQLException e){
-            System.out.println("Please try again");
+            out.println("Please try again");
         }finally{
             cm.closeConnection();
         }
     }
 
-    private static void logout(String[] tokens) {
+    private static void logout(Session session, Tokenizer tokens) {
+        PrintStream out = session.getOut();
 
-        if (tokens.length != 1) {
-            System.out.println("Please try again");
+        if (tokens.size() != 1) {
+            out.println("Please try again");
             return;
         }
 
 
         try {
-            if (currentCaregiver == null && currentPatient == null) {
-                System.out.println("Please login first");
+            if (session.getCurrentCaregiver() == null && session.getCurrentPatient() == null) {
+                out.println("Please login first");
                 return;
             }
     
-            currentCaregiver = null;
-            currentPatient = null;
-            System.out.println("Successfully logged out");
+            session.logout();
+            out.println("Successfully logged out");
         } catch (Exception e) {
-            System.out.println("Please try again");
+            out.println("Please try again");
         }
         
     }
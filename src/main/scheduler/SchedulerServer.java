@@ -0,0 +1,79 @@
+package scheduler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the scheduler's line protocol over TCP so one process can handle many users at once.
+ *
+ * Each client connection gets its own Session and runs on its own thread; clients send the same
+ * commands as the console (one per line) and receive the same output, followed by a "> " prompt.
+ * Sessions run on virtual threads when the JVM supports them (Java 21+), otherwise on a cached
+ * platform thread pool.
+ */
+public class SchedulerServer {
+
+    private final int port;
+    private final ExecutorService sessions = newSessionExecutor();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    public SchedulerServer(int port) {
+        this.port = port;
+    }
+
+    public void serve() throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 1024)) {
+            System.out.println("Scheduler listening on port " + server.getLocalPort());
+            while (true) {
+                Socket client = server.accept();
+                sessions.execute(() -> handle(client));
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    private void handle(Socket client) {
+        activeSessions.incrementAndGet();
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(socket.getOutputStream(), false, StandardCharsets.UTF_8)) {
+            socket.setTcpNoDelay(true);
+            Session session = new Session(out);
+            Scheduler.printGreeting(out);
+            Scheduler.runSession(session, in);
+            out.flush();
+        } catch (IOException e) {
+            // the client went away; nothing to clean up beyond the socket
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() only exists from Java 21, so look it up at
+    // runtime to keep the code compiling on older JDKs.
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "scheduler-session");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
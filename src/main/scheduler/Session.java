@@ -0,0 +1,71 @@
+package scheduler;
+
+import scheduler.command.Tokenizer;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.PrintStream;
+
+/**
+ * State for one connected user: who is logged in and where command output goes.
+ * The interactive console has a single session; server mode creates one per client connection.
+ */
+public class Session {
+
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in at a time in a session
+    private Caregiver currentCaregiver = null;
+    private Patient currentPatient = null;
+
+    private final PrintStream out;
+    // reused for every command line of this session
+    private final Tokenizer tokenizer = new Tokenizer();
+    // when this session's last reserve or cancel committed (ms since the epoch), 0 if never;
+    // reads go to the primary until a replica has caught up with it
+    private volatile long lastWriteAt = 0;
+
+    public Session(PrintStream out) {
+        this.out = out;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public long getLastWriteAt() {
+        return lastWriteAt;
+    }
+
+    public void recordWrite() {
+        lastWriteAt = System.currentTimeMillis();
+    }
+
+    public Caregiver getCurrentCaregiver() {
+        return currentCaregiver;
+    }
+
+    public Patient getCurrentPatient() {
+        return currentPatient;
+    }
+
+    public void setCurrentCaregiver(Caregiver caregiver) {
+        this.currentCaregiver = caregiver;
+    }
+
+    public void setCurrentPatient(Patient patient) {
+        this.currentPatient = patient;
+    }
+
+    public boolean isLoggedIn() {
+        return currentCaregiver != null || currentPatient != null;
+    }
+
+    public void logout() {
+        currentCaregiver = null;
+        currentPatient = null;
+    }
+}
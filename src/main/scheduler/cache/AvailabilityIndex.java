@@ -0,0 +1,283 @@
+package scheduler.cache;
+
+import scheduler.dao.StorageBackend;
+import scheduler.db.ConnectionManager;
+import scheduler.journal.EventJournal;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Write-through, in-memory copy of the Availabilities table: for each date, the sorted set of
+ * caregivers who are still free that day.
+ *
+ * The table stays the source of truth. Every code path that changes it (uploading availability,
+ * reserving, canceling) also updates this index after its write commits, so schedule searches
+ * and caregiver selection can be answered without a query. Until load() succeeds the index
+ * reports itself as not loaded and callers fall back to the database.
+ */
+public class AvailabilityIndex {
+
+    private static final AvailabilityIndex instance = new AvailabilityIndex();
+
+    private volatile NavigableMap<LocalDate, NavigableSet<String>> byDate = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded = false;
+    private ScheduledExecutorService checker = null;
+
+    // add() and remove() share the read lock; verifyAndRepair() takes the write lock to apply
+    // its differences, so no single update can interleave with the repair of the same slot
+    private final ReadWriteLock repairLock = new ReentrantReadWriteLock();
+    // while a check reads the table, the slots changed meanwhile, as "date username"; those are
+    // newer than the snapshot and left alone by the repair
+    private volatile boolean checking = false;
+    private final Set<String> touched = ConcurrentHashMap.newKeySet();
+
+    private AvailabilityIndex() {
+    }
+
+    public static AvailabilityIndex getInstance() {
+        return instance;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * (Re)builds the index from the Availabilities table.
+     */
+    public void load() throws SQLException {
+        byDate = readTable();
+        loaded = true;
+        ScheduleCache.getInstance().clear();
+    }
+
+    /**
+     * Replaces the index with the given contents, e.g. replayed from the event journal.
+     */
+    public void restore(Map<LocalDate, ? extends Collection<String>> contents) {
+        NavigableMap<LocalDate, NavigableSet<String>> map = new ConcurrentSkipListMap<>();
+        contents.forEach((date, caregivers) -> {
+            if (!caregivers.isEmpty()) {
+                map.put(date, new ConcurrentSkipListSet<>(caregivers));
+            }
+        });
+        byDate = map;
+        loaded = true;
+        ScheduleCache.getInstance().clear();
+    }
+
+    /**
+     * Calls slot once for every free (date, caregiver), in date and then username order.
+     */
+    public void forEach(BiConsumer<LocalDate, String> slot) {
+        for (Map.Entry<LocalDate, NavigableSet<String>> entry : byDate.entrySet()) {
+            for (String username : entry.getValue()) {
+                slot.accept(entry.getKey(), username);
+            }
+        }
+    }
+
+    public void add(Date d, String username) {
+        if (!loaded) {
+            return;
+        }
+        repairLock.readLock().lock();
+        try {
+            if (checking) {
+                touched.add(d.toLocalDate() + " " + username);
+            }
+            byDate.computeIfAbsent(d.toLocalDate(), k -> new ConcurrentSkipListSet<>()).add(username);
+        } finally {
+            repairLock.readLock().unlock();
+        }
+    }
+
+    public void remove(Date d, String username) {
+        if (!loaded) {
+            return;
+        }
+        repairLock.readLock().lock();
+        try {
+            if (checking) {
+                touched.add(d.toLocalDate() + " " + username);
+            }
+            removeEntry(d.toLocalDate(), username);
+        } finally {
+            repairLock.readLock().unlock();
+        }
+    }
+
+    private void removeEntry(LocalDate date, String username) {
+        // drop the date entirely once nobody is left so searches do not see empty days
+        byDate.computeIfPresent(date, (k, set) -> {
+            set.remove(username);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Caregivers free on the given date, in username order. The returned set is a read-only
+     * live view.
+     */
+    public NavigableSet<String> caregivers(Date d) {
+        NavigableSet<String> set = byDate.get(d.toLocalDate());
+        return set == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(set);
+    }
+
+    /**
+     * Dates from start to end (inclusive) that have at least one free caregiver, in date order,
+     * each with its caregivers in username order. The returned map is a read-only live view.
+     */
+    public NavigableMap<LocalDate, NavigableSet<String>> range(Date start, Date end) {
+        return Collections.unmodifiableNavigableMap(byDate.subMap(start.toLocalDate(), true, end.toLocalDate(), true));
+    }
+
+    /**
+     * Compares the index with the table and brings the index back in line with it.
+     * Differences mean something wrote to the table without going through this process.
+     *
+     * The differences are applied to the live index one slot at a time rather than by swapping
+     * in the snapshot, skipping slots that uploads, reservations or cancellations of this
+     * process changed while the table was read: their own update is newer than the snapshot.
+     */
+    public synchronized ConsistencyReport verifyAndRepair() throws SQLException {
+        if (!loaded) {
+            load();
+            return new ConsistencyReport(List.of(), List.of());
+        }
+        NavigableMap<LocalDate, NavigableSet<String>> table;
+        touched.clear();
+        checking = true;
+        try {
+            table = readTable();
+        } catch (SQLException | RuntimeException e) {
+            checking = false;
+            throw e;
+        }
+
+        List<String> missing = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        repairLock.writeLock().lock();
+        try {
+            checking = false;
+            for (Map.Entry<LocalDate, NavigableSet<String>> entry : table.entrySet()) {
+                NavigableSet<String> indexed = byDate.get(entry.getKey());
+                for (String username : entry.getValue()) {
+                    String slot = entry.getKey() + " " + username;
+                    if ((indexed == null || !indexed.contains(username)) && !touched.contains(slot)) {
+                        missing.add(slot);
+                        byDate.computeIfAbsent(entry.getKey(), k -> new ConcurrentSkipListSet<>()).add(username);
+                    }
+                }
+            }
+            for (Map.Entry<LocalDate, NavigableSet<String>> entry : byDate.entrySet()) {
+                NavigableSet<String> stored = table.get(entry.getKey());
+                for (String username : entry.getValue()) {
+                    String slot = entry.getKey() + " " + username;
+                    if ((stored == null || !stored.contains(username)) && !touched.contains(slot)) {
+                        stale.add(slot);
+                        removeEntry(entry.getKey(), username);
+                    }
+                }
+            }
+            touched.clear();
+        } finally {
+            repairLock.writeLock().unlock();
+        }
+        if (!missing.isEmpty() || !stale.isEmpty()) {
+            ScheduleCache.getInstance().clear();
+            // the journal no longer explains the index, so the next start must scan
+            EventJournal.getInstance().markStale();
+        }
+        return new ConsistencyReport(missing, stale);
+    }
+
+    /**
+     * Runs verifyAndRepair() in the background every intervalSeconds and prints any drift.
+     */
+    public synchronized void startPeriodicCheck(long intervalSeconds) {
+        if (checker != null || intervalSeconds <= 0) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "availability-index-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(() -> {
+            try {
+                ConsistencyReport report = verifyAndRepair();
+                if (!report.isConsistent()) {
+                    System.out.println("Availability index repaired: " + report);
+                }
+            } catch (SQLException e) {
+                System.out.println("Availability index check failed: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static NavigableMap<LocalDate, NavigableSet<String>> readTable() throws SQLException {
+        NavigableMap<LocalDate, NavigableSet<String>> map = new ConcurrentSkipListMap<>();
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            StorageBackend.getInstance().availabilities().scanAll(con, (d, username) ->
+                    map.computeIfAbsent(d.toLocalDate(), k -> new ConcurrentSkipListSet<>()).add(username));
+        } finally {
+            cm.closeConnection();
+        }
+        return map;
+    }
+
+    public static class ConsistencyReport {
+        // rows in the table that the index did not have
+        private final List<String> missing;
+        // index entries with no matching row
+        private final List<String> stale;
+
+        private ConsistencyReport(List<String> missing, List<String> stale) {
+            this.missing = missing;
+            this.stale = stale;
+        }
+
+        public boolean isConsistent() {
+            return missing.isEmpty() && stale.isEmpty();
+        }
+
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        public List<String> getStale() {
+            return stale;
+        }
+
+        @Override
+        public String toString() {
+            return "ConsistencyReport{" +
+                    "missing=" + missing +
+                    ", stale=" + stale +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package scheduler.cache;
+
+import scheduler.dao.StorageBackend;
+import scheduler.db.ConnectionManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of booked appointments per caregiver, kept in memory so reserve can prefer the least
+ * busy caregiver without counting rows.
+ *
+ * Loaded from the Appointment table at startup. ReservationService counts a booking as soon as
+ * it claims the caregiver's slot, before the transaction commits, so concurrent reservations
+ * already see it and go elsewhere; it takes the booking back if the reservation does not commit
+ * and when the appointment is canceled. Until load() succeeds every caregiver counts as idle.
+ */
+public class CaregiverLoad {
+
+    private static final CaregiverLoad instance = new CaregiverLoad();
+
+    private final Map<String, AtomicInteger> appointments = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    private CaregiverLoad() {
+    }
+
+    public static CaregiverLoad getInstance() {
+        return instance;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * (Re)counts the appointments of every caregiver.
+     */
+    public synchronized void load() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            Map<String, Integer> counts = StorageBackend.getInstance().appointments().countByCaregiver(con);
+            appointments.clear();
+            counts.forEach((caregiver, count) -> appointments.put(caregiver, new AtomicInteger(count)));
+        } finally {
+            cm.closeConnection();
+        }
+        loaded = true;
+    }
+
+    /**
+     * Replaces the counts with the given ones, e.g. replayed from the event journal.
+     */
+    public synchronized void restore(Map<String, Integer> counts) {
+        appointments.clear();
+        counts.forEach((caregiver, count) -> appointments.put(caregiver, new AtomicInteger(count)));
+        loaded = true;
+    }
+
+    /**
+     * Point-in-time copy of all counts.
+     */
+    public Map<String, Integer> snapshot() {
+        Map<String, Integer> copy = new HashMap<>();
+        appointments.forEach((caregiver, count) -> copy.put(caregiver, count.get()));
+        return copy;
+    }
+
+    public int get(String caregiver) {
+        AtomicInteger count = appointments.get(caregiver);
+        return count == null ? 0 : count.get();
+    }
+
+    public void add(String caregiver, int delta) {
+        appointments.computeIfAbsent(caregiver, k -> new AtomicInteger()).addAndGet(delta);
+    }
+}
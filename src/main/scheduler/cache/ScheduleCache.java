@@ -0,0 +1,178 @@
+package scheduler.cache;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rendered output of search_caregiver_schedule: the caregiver list per date, and the vaccine
+ * list, which is the same for every date. Popular dates are searched over and over, so each is
+ * rendered once and reused until something changes it.
+ *
+ * Entries are invalidated by the events that change them, after those events have updated the
+ * database and the in-memory indexes: availability uploads, reservations and cancellations for
+ * their date, and any change to dose counts for the vaccine list. Every invalidation also bumps
+ * the generation number of what it invalidated (its date, or the vaccine list), and a render
+ * only enters the cache if its own generation did not change while it ran, so a render racing a
+ * write can never leave a stale entry behind while writes to other dates do not keep it out. The size and TTL bounds
+ * cap memory and how long a change made by another process can go unseen.
+ */
+public class ScheduleCache {
+
+    private static final ScheduleCache instance = new ScheduleCache();
+
+    private static final int MAX_DATES = 512;
+    private static final long TTL_MS = 10_000;
+
+    /**
+     * Produces the text to cache on a miss.
+     */
+    public interface Renderer {
+        String render() throws SQLException;
+    }
+
+    // least recently used first
+    private final Map<LocalDate, Entry> caregivers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalDate, Entry> eldest) {
+            return size() > MAX_DATES;
+        }
+    };
+    private Entry vaccines = null;
+    // per date, bumped by invalidate(date); the dates of a schedule are few, so this stays small
+    private final Map<LocalDate, AtomicLong> dateGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong vaccineGeneration = new AtomicLong();
+    // bumped by clear(), which invalidates everything
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final LongAdder caregiverHits = new LongAdder();
+    private final LongAdder caregiverMisses = new LongAdder();
+    private final LongAdder vaccineHits = new LongAdder();
+    private final LongAdder vaccineMisses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private ScheduleCache() {
+    }
+
+    public static ScheduleCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * The caregiver list for the date, rendered by renderer if it is not cached. If cacheable is
+     * false (the data came from a replica that may lag), the result is returned but not kept.
+     */
+    public String caregivers(LocalDate date, boolean cacheable, Renderer renderer) throws SQLException {
+        synchronized (this) {
+            Entry entry = caregivers.get(date);
+            if (entry != null && entry.isFresh()) {
+                caregiverHits.increment();
+                return entry.text;
+            }
+        }
+        caregiverMisses.increment();
+        AtomicLong generation = dateGenerations.computeIfAbsent(date, k -> new AtomicLong());
+        long before = generation.get();
+        long epochBefore = epoch.get();
+        String text = renderer.render();
+        if (cacheable) {
+            synchronized (this) {
+                if (generation.get() == before && epoch.get() == epochBefore) {
+                    caregivers.put(date, new Entry(text));
+                }
+            }
+        }
+        return text;
+    }
+
+    /**
+     * The vaccine list, rendered by renderer if it is not cached; see caregivers.
+     */
+    public String vaccines(boolean cacheable, Renderer renderer) throws SQLException {
+        synchronized (this) {
+            if (vaccines != null && vaccines.isFresh()) {
+                vaccineHits.increment();
+                return vaccines.text;
+            }
+        }
+        vaccineMisses.increment();
+        long before = vaccineGeneration.get();
+        long epochBefore = epoch.get();
+        String text = renderer.render();
+        if (cacheable) {
+            synchronized (this) {
+                if (vaccineGeneration.get() == before && epoch.get() == epochBefore) {
+                    vaccines = new Entry(text);
+                }
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Drops the caregiver list of the date. Call after the change is visible.
+     */
+    public synchronized void invalidate(LocalDate date) {
+        dateGenerations.computeIfAbsent(date, k -> new AtomicLong()).incrementAndGet();
+        invalidations.increment();
+        caregivers.remove(date);
+    }
+
+    /**
+     * Drops the vaccine list. Call after the change is visible.
+     */
+    public synchronized void invalidateVaccines() {
+        vaccineGeneration.incrementAndGet();
+        invalidations.increment();
+        vaccines = null;
+    }
+
+    public synchronized void clear() {
+        epoch.incrementAndGet();
+        invalidations.increment();
+        caregivers.clear();
+        vaccines = null;
+    }
+
+    public double getHitRatio() {
+        long hits = caregiverHits.sum() + vaccineHits.sum();
+        long lookups = hits + caregiverMisses.sum() + vaccineMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * One line for the stats report.
+     */
+    public String describe() {
+        int dates;
+        synchronized (this) {
+            dates = caregivers.size();
+        }
+        return String.format("Schedule cache: %d dates, caregivers %d hits / %d misses (%.1f%%), "
+                        + "vaccines %d hits / %d misses (%.1f%%), %d invalidations%n",
+                dates, caregiverHits.sum(), caregiverMisses.sum(), ratio(caregiverHits, caregiverMisses),
+                vaccineHits.sum(), vaccineMisses.sum(), ratio(vaccineHits, vaccineMisses), invalidations.sum());
+    }
+
+    private static double ratio(LongAdder hits, LongAdder misses) {
+        long lookups = hits.sum() + misses.sum();
+        return lookups == 0 ? 0 : 100.0 * hits.sum() / lookups;
+    }
+
+    private static final class Entry {
+        private final String text;
+        private final long expiresAt = System.currentTimeMillis() + TTL_MS;
+
+        Entry(String text) {
+            this.text = text;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiresAt;
+        }
+    }
+}
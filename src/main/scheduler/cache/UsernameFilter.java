@@ -0,0 +1,279 @@
+package scheduler.cache;
+
+import scheduler.dao.AccountDao;
+import scheduler.dao.StorageBackend;
+import scheduler.db.ConnectionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Answers "is this username taken?" for patients or caregivers, usually without a query.
+ *
+ * A Bloom filter over every username in the table says whether a name is definitely absent, in
+ * which case no query is needed; that is the common case for create_patient and
+ * create_caregiver, and the one bots and retry storms hit. Names the filter may contain are
+ * checked against the database, and the ones found are remembered in a small LRU set so
+ * repeated attempts at a taken name do not query either. Accounts are never deleted, so neither
+ * structure goes stale.
+ *
+ * The filter is built by load() at startup, sized for twice the accounts present then, and every
+ * account created through saveToDB or the bulk importer is added before its insert, so a name
+ * that is in the table is always in the filter. When it fills up, a layer twice the size with
+ * half the false positive rate is added for new names (a scalable Bloom filter), so the overall
+ * rate stays under twice the target no matter how many accounts are created.
+ *
+ * Until load() succeeds every check queries. An account inserted by another process is not
+ * seen, so the unique key on Username stays the last line of defense.
+ */
+public class UsernameFilter {
+
+    private static final UsernameFilter patients = new UsernameFilter("patients",
+            () -> StorageBackend.getInstance().patients());
+    private static final UsernameFilter caregivers = new UsernameFilter("caregivers",
+            () -> StorageBackend.getInstance().caregivers());
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    // room for growth even when the table starts out (almost) empty
+    private static final int MIN_CAPACITY = 100_000;
+    private static final int RECENT_HITS = 1024;
+
+    private final String name;
+    private final Supplier<AccountDao> accounts;
+    // the layers of the filter, oldest first; only the newest one takes new names
+    private volatile List<Bits> layers = null;
+
+    // usernames recently found in the table, most recently used last
+    private final Set<String> recentHits = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_HITS;
+                }
+            }));
+
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder recentHitCount = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    private UsernameFilter(String name, Supplier<AccountDao> accounts) {
+        this.name = name;
+        this.accounts = accounts;
+    }
+
+    public static UsernameFilter patients() {
+        return patients;
+    }
+
+    public static UsernameFilter caregivers() {
+        return caregivers;
+    }
+
+    public boolean isLoaded() {
+        return layers != null;
+    }
+
+    /**
+     * (Re)builds the filter from the table.
+     */
+    public synchronized void load() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            AccountDao dao = accounts.get();
+            Bits fresh = new Bits(Math.max(MIN_CAPACITY, 2L * dao.count(con)), FALSE_POSITIVE_RATE);
+            dao.scanUsernames(con, fresh::add);
+            layers = List.of(fresh);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    /**
+     * Records a username about to be inserted. Call before the insert, so there is no moment in
+     * which the name is in the table but not in the filter; if the insert then fails the name
+     * merely costs a query when it is checked.
+     */
+    public void add(String username) {
+        List<Bits> current = layers;
+        if (current == null) {
+            return;
+        }
+        Bits newest = current.get(current.size() - 1);
+        if (newest.isFull()) {
+            newest = grow(newest);
+        }
+        newest.add(username);
+    }
+
+    private synchronized Bits grow(Bits full) {
+        List<Bits> current = layers;
+        Bits newest = current.get(current.size() - 1);
+        if (newest != full) {
+            // another thread grew the filter first
+            return newest;
+        }
+        List<Bits> grown = new ArrayList<>(current);
+        newest = new Bits(2 * full.capacity, full.rate / 2);
+        grown.add(newest);
+        layers = List.copyOf(grown);
+        return newest;
+    }
+
+    /**
+     * Whether an account with this username exists, querying only when the filter cannot rule
+     * it out and it was not found recently.
+     */
+    public boolean exists(String username) throws SQLException {
+        boolean filtered = isLoaded();
+        if (!mightContain(username)) {
+            skipped.increment();
+            return false;
+        }
+        if (recentHits.contains(username)) {
+            recentHitCount.increment();
+            return true;
+        }
+
+        queries.increment();
+        boolean exists;
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            exists = accounts.get().exists(con, username);
+        } finally {
+            cm.closeConnection();
+        }
+        if (exists) {
+            recentHits.add(username);
+        } else if (filtered) {
+            falsePositives.increment();
+        }
+        return exists;
+    }
+
+    /**
+     * Whether the username may exist; false means it definitely does not.
+     */
+    public boolean mightContain(String username) {
+        List<Bits> current = layers;
+        if (current == null) {
+            return true;
+        }
+        long h = hash(username);
+        for (Bits layer : current) {
+            if (layer.mightContain(h)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Share of checks for absent usernames that the filter could not rule out.
+     */
+    public double getFalsePositiveRate() {
+        long fp = falsePositives.sum();
+        long negatives = fp + skipped.sum();
+        return negatives == 0 ? 0 : (double) fp / negatives;
+    }
+
+    /**
+     * One line for the stats report.
+     */
+    public String describe() {
+        List<Bits> current = layers;
+        if (current == null) {
+            return "Username filter (" + name + "): not loaded, " + queries.sum() + " queries\n";
+        }
+        long names = 0;
+        long words = 0;
+        double allNegative = 1;
+        for (Bits layer : current) {
+            names += layer.count.get();
+            words += layer.words.length();
+            allNegative *= 1 - layer.expectedFalsePositiveRate();
+        }
+        return String.format("Username filter (%s): %d names in %d KB (%d layers), %d checks skipped, "
+                        + "%d recent hits, %d queries, %d false positives (%.2f%% observed, %.2f%% expected)%n",
+                name, names, words / 128, current.size(), skipped.sum(), recentHitCount.sum(), queries.sum(),
+                falsePositives.sum(), 100 * getFalsePositiveRate(), 100 * (1 - allNegative));
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes, finished with the SplitMix64 mixer
+    private static long hash(String username) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    // One Bloom filter layer over a lock-free bit array; k bit positions per name by double hashing.
+    private static final class Bits {
+
+        private final long capacity;
+        private final double rate;
+        private final AtomicLongArray words;
+        private final long size;
+        private final int hashes;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Bits(long capacity, double rate) {
+            this.capacity = capacity;
+            this.rate = rate;
+            double ln2 = Math.log(2);
+            long m = (long) Math.ceil(-capacity * Math.log(rate) / (ln2 * ln2));
+            words = new AtomicLongArray((int) ((m + 63) / 64));
+            size = words.length() * 64L;
+            hashes = Math.max(1, (int) Math.round((double) size / capacity * ln2));
+        }
+
+        boolean isFull() {
+            return count.get() >= capacity;
+        }
+
+        void add(String username) {
+            long h = hash(username);
+            long h1 = h >>> 32;
+            long h2 = h & 0xffffffffL;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, size);
+                long mask = 1L << bit;
+                words.getAndAccumulate((int) (bit >>> 6), mask, (word, m) -> word | m);
+            }
+            count.incrementAndGet();
+        }
+
+        boolean mightContain(long h) {
+            long h1 = h >>> 32;
+            long h2 = h & 0xffffffffL;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, size);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double expectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashes * count.get() / size), hashes);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package scheduler.cache;
+
+import scheduler.dao.StorageBackend;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Transactions;
+import scheduler.journal.EventJournal;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory dose counts for every vaccine, kept in atomic counters so reservations can take and
+ * return doses without reading the Vaccines table.
+ *
+ * Changes are persisted write-behind: whoever changes a count appends a row to DoseLedger in
+ * its own transaction (see recordDelta), and flush() periodically folds the ledger into
+ * Vaccines.Doses. Because a ledger row commits or rolls back together with the change that
+ * caused it, a crash at any point loses nothing; load() folds whatever is left in the ledger
+ * before reading the counts.
+ */
+public class VaccineInventory {
+
+    private static final VaccineInventory instance = new VaccineInventory();
+
+    // ordered by name so listings come out sorted
+    private final ConcurrentSkipListMap<String, AtomicInteger> doses = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded = false;
+    private ScheduledExecutorService flusher = null;
+
+    private VaccineInventory() {
+    }
+
+    public static VaccineInventory getInstance() {
+        return instance;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reconciles any unflushed ledger entries into Vaccines and loads the resulting counts.
+     */
+    public synchronized void load() throws SQLException {
+        flush();
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            Map<String, Integer> stored = StorageBackend.getInstance().vaccines().findAll(con);
+            doses.clear();
+            stored.forEach((name, count) -> doses.put(name, new AtomicInteger(count)));
+        } finally {
+            cm.closeConnection();
+        }
+        loaded = true;
+        ScheduleCache.getInstance().invalidateVaccines();
+    }
+
+    /**
+     * Replaces the counts with the given ones, e.g. replayed from the event journal. Ledger rows
+     * left from before are still folded by the next flush; the counts already include them.
+     */
+    public synchronized void restore(Map<String, Integer> counts) {
+        doses.clear();
+        counts.forEach((name, count) -> doses.put(name, new AtomicInteger(count)));
+        loaded = true;
+        ScheduleCache.getInstance().invalidateVaccines();
+    }
+
+    /**
+     * Returns the available doses of a vaccine, or null if it is unknown.
+     */
+    public Integer get(String vaccineName) {
+        AtomicInteger count = doses.get(vaccineName);
+        return count == null ? null : count.get();
+    }
+
+    /**
+     * Point-in-time copy of all counts, ordered by vaccine name.
+     */
+    public Map<String, Integer> snapshot() {
+        Map<String, Integer> copy = new LinkedHashMap<>();
+        doses.forEach((name, count) -> copy.put(name, count.get()));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Takes num doses if that many are available. Returns false (and takes nothing) otherwise.
+     */
+    public boolean tryReserve(String vaccineName, int num) {
+        AtomicInteger count = doses.get(vaccineName);
+        if (count == null) {
+            return false;
+        }
+        while (true) {
+            int current = count.get();
+            if (current < num) {
+                return false;
+            }
+            if (count.compareAndSet(current, current - num)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back doses, either ones taken by tryReserve whose transaction failed or new stock.
+     */
+    public void release(String vaccineName, int num) {
+        AtomicInteger count = doses.get(vaccineName);
+        if (count != null) {
+            count.addAndGet(num);
+        }
+    }
+
+    /**
+     * Registers a vaccine that was just inserted into Vaccines.
+     */
+    public void create(String vaccineName, int initialDoses) {
+        if (loaded) {
+            doses.putIfAbsent(vaccineName, new AtomicInteger(initialDoses));
+        }
+    }
+
+    /**
+     * Appends a dose change to the ledger on the caller's connection, inside its transaction.
+     */
+    public void recordDelta(Connection con, String vaccineName, int delta) throws SQLException {
+        StorageBackend.getInstance().vaccines().appendLedger(con, vaccineName, delta);
+    }
+
+    /**
+     * Folds all ledger entries written so far into Vaccines.Doses in one transaction.
+     */
+    public void flush() throws SQLException {
+        EventJournal journal = EventJournal.getInstance();
+        long seq = Transactions.run(con -> {
+            long journaled = journal.begin(con);
+            StorageBackend.getInstance().vaccines().foldLedger(con);
+            journal.end(con, journaled);
+            return journaled;
+        });
+        // changes the tables, not the counts
+        EventJournal.await(journal.unchanged(seq));
+    }
+
+    /**
+     * Flushes the ledger in the background every intervalMs.
+     */
+    public synchronized void startFlusher(long intervalMs) {
+        if (flusher != null || intervalMs <= 0) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vaccine-inventory-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (SQLException e) {
+                // entries stay in the ledger and are picked up by the next flush
+                System.out.println("Vaccine inventory flush failed: " + e.getMessage());
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopFlusher() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+    }
+}
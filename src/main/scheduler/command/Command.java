@@ -0,0 +1,13 @@
+package scheduler.command;
+
+import scheduler.Session;
+
+/**
+ * Handler for one command. tokens.get(0) is the command name, the rest are its arguments.
+ * Output goes to session.getOut().
+ */
+@FunctionalInterface
+public interface Command {
+
+    void execute(Session session, Tokenizer tokens);
+}
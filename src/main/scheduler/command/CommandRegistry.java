@@ -0,0 +1,34 @@
+package scheduler.command;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maps command names to their handlers. Commands are registered once at startup and looked up
+ * for every input line, so the map is only read after construction.
+ */
+public class CommandRegistry {
+
+    private final Map<String, Command> commands = new HashMap<>();
+
+    public CommandRegistry register(String name, Command command) {
+        if (commands.putIfAbsent(name, command) != null) {
+            throw new IllegalArgumentException("Command already registered: " + name);
+        }
+        return this;
+    }
+
+    /**
+     * The handler for the given name, or null if there is none.
+     */
+    public Command get(String name) {
+        return commands.get(name);
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(new TreeSet<>(commands.keySet()));
+    }
+}
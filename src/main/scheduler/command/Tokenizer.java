@@ -0,0 +1,93 @@
+package scheduler.command;
+
+import java.util.Arrays;
+
+/**
+ * Splits a command line into whitespace-separated tokens without regular expressions or an
+ * array of strings per line. Only token offsets are recorded; a token's String is created the
+ * first time it is asked for. One instance is reused for every line of a session, so it is not
+ * thread-safe.
+ */
+public final class Tokenizer {
+
+    private String line = "";
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private String[] values = new String[8];
+    private int count = 0;
+
+    /**
+     * Tokenizes a new line, replacing the previous one. Runs of spaces and tabs count as one
+     * separator and leading or trailing whitespace is ignored.
+     */
+    public Tokenizer tokenize(String line) {
+        for (int i = 0; i < count; i++) {
+            values[i] = null;
+        }
+        this.line = line;
+        count = 0;
+        int n = line.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && isSeparator(line.charAt(i))) {
+                i++;
+            }
+            if (i == n) {
+                break;
+            }
+            int start = i;
+            while (i < n && !isSeparator(line.charAt(i))) {
+                i++;
+            }
+            add(start, i);
+        }
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String get(int index) {
+        if (index >= count) {
+            throw new IndexOutOfBoundsException("Token " + index + " of " + count);
+        }
+        String value = values[index];
+        if (value == null) {
+            value = line.substring(starts[index], ends[index]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Compares a token with a string without creating the token's String.
+     */
+    public boolean is(int index, String expected) {
+        return index < count && ends[index] - starts[index] == expected.length()
+                && line.regionMatches(starts[index], expected, 0, expected.length());
+    }
+
+    /**
+     * The whole line as it was given.
+     */
+    public String line() {
+        return line;
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            int capacity = count * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+}
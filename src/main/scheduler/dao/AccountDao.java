@@ -0,0 +1,144 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Patient or caregiver accounts: a username with its salt and password hash. Both tables have
+ * the same shape, so one class serves either, given the table name.
+ */
+public class AccountDao {
+
+    protected final String table;
+    private final String insert;
+    private final String insertIfAbsent;
+    private final String selectCredentials;
+    private final String selectExists;
+    private final String selectAll;
+    private final String count;
+
+    AccountDao(String table) {
+        this.table = table;
+        this.insert = "INSERT INTO " + table + " (Username, Salt, Hash) VALUES (?, ?, ?)";
+        this.insertIfAbsent = insert + " ON CONFLICT DO NOTHING";
+        this.selectCredentials = "SELECT Salt, Hash FROM " + table + " WHERE Username = ?";
+        this.selectExists = "SELECT 1 FROM " + table + " WHERE Username = ?";
+        this.selectAll = "SELECT Username FROM " + table;
+        this.count = "SELECT COUNT(*) FROM " + table;
+    }
+
+    public boolean exists(Connection con, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(selectExists)) {
+            statement.setString(1, username);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    public int count(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(count);
+             ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Calls username once for every account, in no particular order.
+     */
+    public void scanUsernames(Connection con, Consumer<String> username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(selectAll)) {
+            statement.setFetchSize(1000);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    username.accept(rs.getString("Username"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns {salt, hash} for the account, or null if there is none.
+     */
+    public byte[][] findCredentials(Connection con, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(selectCredentials)) {
+            statement.setString(1, username);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new byte[][]{rs.getBytes("Salt"), rs.getBytes("Hash")};
+            }
+        }
+    }
+
+    public void insert(Connection con, String username, byte[] salt, byte[] hash) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(insert)) {
+            statement.setString(1, username);
+            statement.setBytes(2, salt);
+            statement.setBytes(3, hash);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Inserts the accounts as one batch, skipping usernames that already exist. credentials
+     * holds {salt, hash} for the username at the same position. Returns how many were inserted.
+     */
+    public int insertAll(Connection con, List<String> usernames, List<byte[][]> credentials) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(insertIfAbsent)) {
+            for (int i = 0; i < usernames.size(); i++) {
+                statement.setString(1, usernames.get(i));
+                statement.setBytes(2, credentials.get(i)[0]);
+                statement.setBytes(3, credentials.get(i)[1]);
+                statement.addBatch();
+            }
+            return countUpdated(statement.executeBatch());
+        }
+    }
+
+    /**
+     * The given usernames that already have an account, found with one query.
+     */
+    public Set<String> findExisting(Connection con, List<String> usernames) throws SQLException {
+        StringBuilder query = new StringBuilder("SELECT Username FROM ").append(table).append(" WHERE Username IN (");
+        for (int i = 0; i < usernames.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        query.append(")");
+        try (PreparedStatement statement = con.prepareStatement(query.toString())) {
+            for (int i = 0; i < usernames.size(); i++) {
+                statement.setString(i + 1, usernames.get(i));
+            }
+            return readUsernames(statement);
+        }
+    }
+
+    protected static Set<String> readUsernames(PreparedStatement statement) throws SQLException {
+        Set<String> usernames = new HashSet<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                usernames.add(rs.getString("Username"));
+            }
+        }
+        return usernames;
+    }
+
+    // drivers may report SUCCESS_NO_INFO (-2) for batched rows; only count definite updates
+    static int countUpdated(int[] updates) {
+        int count = 0;
+        for (int updated : updates) {
+            if (updated > 0) {
+                count += updated;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,128 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Booked appointments.
+ */
+public class AppointmentDao {
+
+    private static final String INSERT =
+            "INSERT INTO Appointment (AppointmentID, PatientUsername, CaregiverUsername, VaccineName, Time) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE =
+            "DELETE FROM Appointment WHERE AppointmentID = ? " +
+            "RETURNING PatientUsername, CaregiverUsername, VaccineName, Time";
+    private static final String COUNT_BY_CAREGIVER =
+            "SELECT CaregiverUsername, COUNT(*) AS Appointments FROM Appointment GROUP BY CaregiverUsername";
+    // starting value for the appointment ID sequence if the migration never created it
+    private static final String SEED_ID = "SELECT COALESCE(MAX(AppointmentID), 0) + 1 FROM Appointment";
+
+    AppointmentDao() {
+    }
+
+    public String getSeedIdQuery() {
+        return SEED_ID;
+    }
+
+    public void insert(Connection con, long appointmentId, String patientUsername, String caregiverUsername,
+                       String vaccineName, Date d) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(INSERT)) {
+            statement.setLong(1, appointmentId);
+            statement.setString(2, patientUsername);
+            statement.setString(3, caregiverUsername);
+            statement.setString(4, vaccineName);
+            statement.setDate(5, d);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes the appointment and returns what it was, or null if there is no such appointment.
+     */
+    public AppointmentRecord delete(Connection con, long appointmentId) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(DELETE)) {
+            statement.setLong(1, appointmentId);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new AppointmentRecord(appointmentId, rs.getString("PatientUsername"),
+                        rs.getString("CaregiverUsername"), rs.getString("VaccineName"), rs.getDate("Time"));
+            }
+        }
+    }
+
+    /**
+     * Number of booked appointments per caregiver; caregivers without any are left out.
+     */
+    public Map<String, Integer> countByCaregiver(Connection con) throws SQLException {
+        Map<String, Integer> counts = new HashMap<>();
+        try (PreparedStatement statement = con.prepareStatement(COUNT_BY_CAREGIVER);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                counts.put(rs.getString("CaregiverUsername"), rs.getInt("Appointments"));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Up to limit appointments of a patient (or of a caregiver, if ofPatient is false) in
+     * (Time, AppointmentID) order, optionally between from and to (inclusive, either may be
+     * null), starting strictly after (afterTime, afterId) if afterTime is not null.
+     *
+     * This is keyset pagination: each page is an index range scan no matter how deep into the
+     * history it starts.
+     */
+    public List<AppointmentRecord> findPage(Connection con, boolean ofPatient, String username, Date from, Date to,
+                                            Date afterTime, long afterId, int limit) throws SQLException {
+        StringBuilder query = new StringBuilder(
+                "SELECT AppointmentID, PatientUsername, CaregiverUsername, VaccineName, Time FROM Appointment WHERE ")
+                .append(ofPatient ? "PatientUsername" : "CaregiverUsername").append(" = ?");
+        if (from != null) {
+            query.append(" AND Time >= ?");
+        }
+        if (to != null) {
+            query.append(" AND Time <= ?");
+        }
+        if (afterTime != null) {
+            query.append(" AND (Time > ? OR (Time = ? AND AppointmentID > ?))");
+        }
+        query.append(" ORDER BY Time ASC, AppointmentID ASC LIMIT ?");
+
+        List<AppointmentRecord> page = new ArrayList<>(Math.min(limit, 1024));
+        try (PreparedStatement statement = con.prepareStatement(query.toString())) {
+            statement.setFetchSize(limit);
+            int param = 1;
+            statement.setString(param++, username);
+            if (from != null) {
+                statement.setDate(param++, from);
+            }
+            if (to != null) {
+                statement.setDate(param++, to);
+            }
+            if (afterTime != null) {
+                statement.setDate(param++, afterTime);
+                statement.setDate(param++, afterTime);
+                statement.setLong(param++, afterId);
+            }
+            statement.setInt(param, limit);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    page.add(new AppointmentRecord(rs.getLong("AppointmentID"), rs.getString("PatientUsername"),
+                            rs.getString("CaregiverUsername"), rs.getString("VaccineName"), rs.getDate("Time")));
+                }
+            }
+        }
+        return page;
+    }
+}
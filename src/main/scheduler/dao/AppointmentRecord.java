@@ -0,0 +1,43 @@
+package scheduler.dao;
+
+import java.sql.Date;
+
+/**
+ * One row of the Appointment table.
+ */
+public class AppointmentRecord {
+    private final long appointmentId;
+    private final String patientUsername;
+    private final String caregiverUsername;
+    private final String vaccineName;
+    private final Date date;
+
+    public AppointmentRecord(long appointmentId, String patientUsername, String caregiverUsername,
+                             String vaccineName, Date date) {
+        this.appointmentId = appointmentId;
+        this.patientUsername = patientUsername;
+        this.caregiverUsername = caregiverUsername;
+        this.vaccineName = vaccineName;
+        this.date = date;
+    }
+
+    public long getAppointmentId() {
+        return appointmentId;
+    }
+
+    public String getPatientUsername() {
+        return patientUsername;
+    }
+
+    public String getCaregiverUsername() {
+        return caregiverUsername;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+}
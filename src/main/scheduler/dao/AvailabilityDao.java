@@ -0,0 +1,145 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Days on which a caregiver is free. A row is deleted when the slot is booked and put back
+ * when the appointment is canceled.
+ */
+public class AvailabilityDao {
+
+    private static final String INSERT = "INSERT INTO Availabilities (Time, Username) VALUES (?, ?)";
+    private static final String INSERT_IF_ABSENT = INSERT + " ON CONFLICT DO NOTHING";
+    private static final String DELETE = "DELETE FROM Availabilities WHERE Time = ? AND Username = ?";
+    // the alphabetically first caregiver for the date
+    private static final String DELETE_FIRST =
+            "DELETE FROM Availabilities WHERE Time = ? AND Username = " +
+            "(SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username ASC LIMIT 1) " +
+            "RETURNING Username";
+    private static final String SELECT_BY_DATE =
+            "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username ASC";
+    // the subquery stops after the first maxDates dates with availability
+    private static final String SELECT_RANGE =
+            "SELECT Time, Username FROM Availabilities WHERE Time IN " +
+            "(SELECT DISTINCT Time FROM Availabilities WHERE Time >= ? AND Time <= ? ORDER BY Time ASC LIMIT ?) " +
+            "ORDER BY Time ASC, Username ASC";
+    private static final String SELECT_ALL = "SELECT Time, Username FROM Availabilities";
+
+    AvailabilityDao() {
+    }
+
+    public void insert(Connection con, Date d, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(INSERT)) {
+            statement.setDate(1, d);
+            statement.setString(2, username);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds the caregiver on all given dates, skipping dates already there. Returns how many
+     * were added.
+     */
+    public int insertAll(Connection con, List<Date> dates, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(INSERT_IF_ABSENT)) {
+            for (Date d : dates) {
+                statement.setDate(1, d);
+                statement.setString(2, username);
+                statement.addBatch();
+            }
+            return AccountDao.countUpdated(statement.executeBatch());
+        }
+    }
+
+    /**
+     * Puts a slot back, e.g. after a cancellation. Does nothing if it is already there.
+     */
+    public void restore(Connection con, Date d, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(INSERT_IF_ABSENT)) {
+            statement.setDate(1, d);
+            statement.setString(2, username);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes the caregiver's slot on the date. Returns false if it was already gone.
+     */
+    public boolean claim(Connection con, Date d, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(DELETE)) {
+            statement.setDate(1, d);
+            statement.setString(2, username);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Deletes one slot on the date and returns whose it was, or null if none is left.
+     */
+    public String claimFirst(Connection con, Date d) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(DELETE_FIRST)) {
+            statement.setDate(1, d);
+            statement.setDate(2, d);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString("Username") : null;
+            }
+        }
+    }
+
+    /**
+     * Caregivers free on the date, in username order.
+     */
+    public List<String> findCaregivers(Connection con, Date d) throws SQLException {
+        List<String> caregivers = new ArrayList<>();
+        try (PreparedStatement statement = con.prepareStatement(SELECT_BY_DATE)) {
+            statement.setDate(1, d);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    caregivers.add(rs.getString("Username"));
+                }
+            }
+        }
+        return caregivers;
+    }
+
+    /**
+     * The first maxDates dates from start to end (inclusive) that have a free caregiver, in date
+     * order, each with its caregivers in username order.
+     */
+    public Map<Date, List<String>> findRange(Connection con, Date start, Date end, int maxDates) throws SQLException {
+        Map<Date, List<String>> range = new LinkedHashMap<>();
+        try (PreparedStatement statement = con.prepareStatement(SELECT_RANGE)) {
+            statement.setDate(1, start);
+            statement.setDate(2, end);
+            statement.setInt(3, maxDates);
+            scan(statement, (d, username) -> range.computeIfAbsent(d, k -> new ArrayList<>()).add(username));
+        }
+        return range;
+    }
+
+    /**
+     * Passes every slot in the table to the consumer, in no particular order.
+     */
+    public void scanAll(Connection con, BiConsumer<Date, String> slot) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(SELECT_ALL)) {
+            scan(statement, slot);
+        }
+    }
+
+    private static void scan(PreparedStatement statement, BiConsumer<Date, String> slot) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                slot.accept(rs.getDate("Time"), rs.getString("Username"));
+            }
+        }
+    }
+}
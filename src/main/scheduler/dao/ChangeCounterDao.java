@@ -0,0 +1,80 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The single ChangeCounter row (migration 006), which triggers keep up to date on every change
+ * to the tables behind the in-memory indexes. A transaction whose changes are journaled calls
+ * begin() first and end() last; whatever else changes those tables shows up in External or
+ * Pending.
+ */
+public class ChangeCounterDao {
+
+    // moves changes made since the last journaled transaction into External and takes the next Seq
+    private static final String BEGIN =
+            "UPDATE ChangeCounter SET Seq = Seq + 1, External = External + Pending, Pending = 0 WHERE ID = 1 " +
+            "RETURNING Seq";
+    // the rows this transaction changed are its own, not outside changes
+    private static final String END = "UPDATE ChangeCounter SET Pending = 0 WHERE ID = 1";
+    private static final String SELECT = "SELECT Seq, External, Pending FROM ChangeCounter WHERE ID = 1";
+
+    ChangeCounterDao() {
+    }
+
+    /**
+     * Returns the sequence number of the calling transaction. Being a write, it also takes the
+     * write lock, so no other transaction changes the counted tables until this one ends.
+     */
+    public long begin(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(BEGIN);
+             ResultSet rs = statement.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("ChangeCounter row is missing");
+            }
+            return rs.getLong("Seq");
+        }
+    }
+
+    public void end(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(END)) {
+            statement.executeUpdate();
+        }
+    }
+
+    public Counts read(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(SELECT);
+             ResultSet rs = statement.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("ChangeCounter row is missing");
+            }
+            return new Counts(rs.getLong("Seq"), rs.getLong("External"), rs.getLong("Pending"));
+        }
+    }
+
+    public static final class Counts {
+        private final long seq;
+        private final long external;
+        private final long pending;
+
+        Counts(long seq, long external, long pending) {
+            this.seq = seq;
+            this.external = external;
+            this.pending = pending;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public long getExternal() {
+            return external;
+        }
+
+        public long getPending() {
+            return pending;
+        }
+    }
+}
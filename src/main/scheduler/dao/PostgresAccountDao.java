@@ -0,0 +1,59 @@
+package scheduler.dao;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+final class PostgresAccountDao extends AccountDao {
+
+    private final String selectExisting;
+    private final String insertArrays;
+
+    PostgresAccountDao(String table) {
+        super(table);
+        this.selectExisting = "SELECT Username FROM " + table + " WHERE Username = ANY (?)";
+        this.insertArrays = "INSERT INTO " + table + " (Username, Salt, Hash) "
+                + "SELECT * FROM unnest(?::varchar[], ?::bytea[], ?::bytea[]) ON CONFLICT DO NOTHING";
+    }
+
+    // one statement whose update count is the number inserted; a JDBC batch rewritten by
+    // reWriteBatchedInserts reports SUCCESS_NO_INFO for every row instead
+    @Override
+    public int insertAll(Connection con, List<String> usernames, List<byte[][]> credentials) throws SQLException {
+        byte[][] salts = new byte[credentials.size()][];
+        byte[][] hashes = new byte[credentials.size()][];
+        for (int i = 0; i < credentials.size(); i++) {
+            salts[i] = credentials.get(i)[0];
+            hashes[i] = credentials.get(i)[1];
+        }
+        Array names = con.createArrayOf("varchar", usernames.toArray());
+        Array saltArray = con.createArrayOf("bytea", salts);
+        Array hashArray = con.createArrayOf("bytea", hashes);
+        try (PreparedStatement statement = con.prepareStatement(insertArrays)) {
+            statement.setArray(1, names);
+            statement.setArray(2, saltArray);
+            statement.setArray(3, hashArray);
+            return statement.executeUpdate();
+        } finally {
+            names.free();
+            saltArray.free();
+            hashArray.free();
+        }
+    }
+
+    // one array parameter instead of a placeholder per username, so the statement text is the
+    // same for every chunk and the server can reuse its plan
+    @Override
+    public Set<String> findExisting(Connection con, List<String> usernames) throws SQLException {
+        Array array = con.createArrayOf("varchar", usernames.toArray());
+        try (PreparedStatement statement = con.prepareStatement(selectExisting)) {
+            statement.setArray(1, array);
+            return readUsernames(statement);
+        } finally {
+            array.free();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package scheduler.dao;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+final class PostgresAvailabilityDao extends AvailabilityDao {
+
+    // concurrent reservations for the same date each lock a different row instead of queueing
+    // behind the first one and then finding its caregiver gone
+    private static final String DELETE_FIRST =
+            "DELETE FROM Availabilities a USING " +
+            "(SELECT Time, Username FROM Availabilities WHERE Time = ? ORDER BY Username ASC LIMIT 1 " +
+            "FOR UPDATE SKIP LOCKED) c " +
+            "WHERE a.Time = c.Time AND a.Username = c.Username RETURNING a.Username";
+    // all dates in one statement and one round trip
+    private static final String INSERT_DATES =
+            "INSERT INTO Availabilities (Time, Username) SELECT d, ? FROM unnest(?::date[]) AS d " +
+            "ON CONFLICT DO NOTHING";
+
+    PostgresAvailabilityDao() {
+    }
+
+    @Override
+    public String claimFirst(Connection con, Date d) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(DELETE_FIRST)) {
+            statement.setDate(1, d);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString("Username") : null;
+            }
+        }
+    }
+
+    @Override
+    public int insertAll(Connection con, List<Date> dates, String username) throws SQLException {
+        Array array = con.createArrayOf("date", dates.toArray());
+        try (PreparedStatement statement = con.prepareStatement(INSERT_DATES)) {
+            statement.setString(1, username);
+            statement.setArray(2, array);
+            return statement.executeUpdate();
+        } finally {
+            array.free();
+        }
+    }
+}
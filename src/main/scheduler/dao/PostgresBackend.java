@@ -0,0 +1,62 @@
+package scheduler.dao;
+
+/**
+ * PostgreSQL, including Amazon Aurora, reached through the Endpoint, Database, Username and
+ * Password environment variables.
+ */
+final class PostgresBackend extends StorageBackend {
+
+    private final String url = url(System.getenv("Endpoint"))
+            // lets the driver send a JDBC insert batch as multi-row INSERTs
+            + "?reWriteBatchedInserts=true";
+
+    PostgresBackend() {
+        super(new PostgresAccountDao("Patient"), new PostgresAccountDao("Caregivers"), new PostgresAvailabilityDao(),
+                new PostgresVaccineDao(), new AppointmentDao());
+    }
+
+    @Override
+    public String getName() {
+        return "postgres";
+    }
+
+    @Override
+    public String getDriverName() {
+        return "org.postgresql.Driver";
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    // a replica host of the same cluster, e.g. an Aurora reader endpoint; the session is read-only
+    @Override
+    public String getReadUrl(String endpoint) {
+        return url(endpoint) + "?readOnly=true";
+    }
+
+    private static String url(String host) {
+        return "jdbc:postgresql://" + host + ":5432/" + System.getenv("Database");
+    }
+
+    @Override
+    public String getUser() {
+        return System.getenv("Username");
+    }
+
+    @Override
+    public String getPassword() {
+        return System.getenv("Password");
+    }
+
+    @Override
+    public String getSchemaDirectory() {
+        return "aurora";
+    }
+
+    @Override
+    public String getCreateScript() {
+        return "aurora-create.sql";
+    }
+}
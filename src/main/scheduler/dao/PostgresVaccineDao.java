@@ -0,0 +1,24 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+final class PostgresVaccineDao extends VaccineDao {
+
+    // drains, sums and applies the ledger in one statement, without shipping the rows to the client
+    private static final String FOLD_LEDGER =
+            "WITH drained AS (DELETE FROM DoseLedger RETURNING VaccineName, Delta), " +
+            "totals AS (SELECT VaccineName, SUM(Delta) AS Delta FROM drained GROUP BY VaccineName) " +
+            "UPDATE Vaccines SET Doses = Vaccines.Doses + totals.Delta FROM totals WHERE Vaccines.Name = totals.VaccineName";
+
+    PostgresVaccineDao() {
+    }
+
+    @Override
+    public void foldLedger(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(FOLD_LEDGER)) {
+            statement.executeUpdate();
+        }
+    }
+}
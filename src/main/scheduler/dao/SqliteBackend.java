@@ -0,0 +1,85 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A local SQLite file, named by the DBPath system property or environment variable.
+ */
+final class SqliteBackend extends StorageBackend {
+
+    // the PRAGMAs applied to every connection
+    private final SqliteProfile profile = SqliteProfile.fromEnvironment();
+
+    // the DBPath system property, if set, wins over the environment variable (used by the benchmarks)
+    private final String url = "jdbc:sqlite:" + System.getProperty("DBPath", System.getenv("DBPath"));
+
+    private final ChangeCounterDao changes = new ChangeCounterDao();
+
+    SqliteBackend() {
+        super(new AccountDao("Patient"), new AccountDao("Caregivers"), new AvailabilityDao(),
+                new VaccineDao(), new AppointmentDao());
+    }
+
+    @Override
+    public ChangeCounterDao changes() {
+        return changes;
+    }
+
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+
+    @Override
+    public String getDriverName() {
+        return "org.sqlite.JDBC";
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    // a copy of the database file kept current by a replication tool such as Litestream or LiteFS
+    @Override
+    public String getReadUrl(String endpoint) {
+        return "jdbc:sqlite:" + endpoint;
+    }
+
+    @Override
+    public String getUser() {
+        return null;
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public String getSchemaDirectory() {
+        return "sqlite";
+    }
+
+    @Override
+    public String getCreateScript() {
+        return "create.sql";
+    }
+
+    @Override
+    public void initialize(Connection con) throws SQLException {
+        profile.apply(con);
+    }
+
+    @Override
+    public List<String> checkSettings(Connection con) throws SQLException {
+        return profile.check(con);
+    }
+
+    @Override
+    public String describeSettings() {
+        return profile.describe();
+    }
+}
@@ -0,0 +1,166 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The PRAGMAs SqliteBackend applies to every connection, picked by the SqliteProfile system
+ * property or environment variable and adjustable one by one:
+ *
+ *   durable   synchronous=FULL: every commit is synced, nothing acknowledged is lost on power failure
+ *   balanced  (default) synchronous=NORMAL: in WAL mode only checkpoints sync, so a power failure
+ *             can lose the last commits but never corrupts the database
+ *   fast      synchronous=OFF and larger caches, for benchmarks and throwaway databases
+ *
+ * All three use WAL, so searches read while a reservation writes, and a busy timeout, so a write
+ * that meets another waits for it instead of failing with SQLITE_BUSY at once. SqliteJournalMode,
+ * SqliteSynchronous, SqliteBusyTimeoutMs, SqliteCacheSize (pages, or KiB if negative, as in
+ * PRAGMA cache_size), SqliteMmapSize (bytes) and SqliteTempStore override single settings.
+ *
+ * check() reads the settings back from a connection; some are silently ignored (journal_mode
+ * cannot be WAL for an in-memory database, mmap_size is capped by how SQLite was compiled).
+ */
+final class SqliteProfile {
+
+    private static final Set<String> JOURNAL_MODES = Set.of("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    // in the order of the numbers SQLite reports them by
+    private static final List<String> SYNCHRONOUS = List.of("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final List<String> TEMP_STORES = List.of("DEFAULT", "FILE", "MEMORY");
+
+    private final String name;
+    private final String journalMode;
+    private final String synchronous;
+    private final long busyTimeoutMs;
+    private final long cacheSize;
+    private final long mmapSize;
+    private final String tempStore;
+
+    // what check() read back, for the stats report
+    private volatile String active = null;
+
+    private SqliteProfile(String name, String journalMode, String synchronous, long busyTimeoutMs, long cacheSize,
+                          long mmapSize, String tempStore) {
+        this.name = name;
+        this.journalMode = setting("SqliteJournalMode", journalMode, JOURNAL_MODES);
+        this.synchronous = setting("SqliteSynchronous", synchronous, SYNCHRONOUS);
+        this.busyTimeoutMs = setting("SqliteBusyTimeoutMs", busyTimeoutMs);
+        this.cacheSize = setting("SqliteCacheSize", cacheSize);
+        this.mmapSize = setting("SqliteMmapSize", mmapSize);
+        this.tempStore = setting("SqliteTempStore", tempStore, TEMP_STORES);
+    }
+
+    static SqliteProfile fromEnvironment() {
+        String name = env("SqliteProfile");
+        if (name != null && name.trim().equalsIgnoreCase("durable")) {
+            return new SqliteProfile("durable", "WAL", "FULL", 2000, -16_000, 0, "DEFAULT");
+        }
+        if (name != null && name.trim().equalsIgnoreCase("fast")) {
+            return new SqliteProfile("fast", "WAL", "OFF", 2000, -64_000, 1L << 30, "MEMORY");
+        }
+        if (name != null && !name.trim().equalsIgnoreCase("balanced")) {
+            System.out.println("Ignoring invalid value for SqliteProfile: " + name);
+        }
+        return new SqliteProfile("balanced", "WAL", "NORMAL", 2000, -16_000, 256L << 20, "MEMORY");
+    }
+
+    void apply(Connection con) throws SQLException {
+        try (Statement statement = con.createStatement()) {
+            // busy_timeout first, so switching the journal mode waits for other connections too
+            statement.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+            statement.execute("PRAGMA journal_mode = " + journalMode);
+            statement.execute("PRAGMA synchronous = " + synchronous);
+            statement.execute("PRAGMA cache_size = " + cacheSize);
+            statement.execute("PRAGMA mmap_size = " + mmapSize);
+            statement.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    /**
+     * Reads the settings back from the connection and returns a line for each one that differs
+     * from the profile.
+     */
+    List<String> check(Connection con) throws SQLException {
+        String actualJournalMode = read(con, "journal_mode").toUpperCase(Locale.ROOT);
+        String actualSynchronous = SYNCHRONOUS.get(Integer.parseInt(read(con, "synchronous")));
+        long actualBusyTimeoutMs = Long.parseLong(read(con, "busy_timeout"));
+        long actualCacheSize = Long.parseLong(read(con, "cache_size"));
+        String mmap = read(con, "mmap_size");
+        // no row when SQLite was built without memory mapping
+        long actualMmapSize = mmap.isEmpty() ? 0 : Long.parseLong(mmap);
+        String actualTempStore = TEMP_STORES.get(Integer.parseInt(read(con, "temp_store")));
+
+        active = String.format("SQLite profile %s: journal_mode=%s, synchronous=%s, busy_timeout=%d ms, "
+                        + "cache_size=%d, mmap_size=%d MB, temp_store=%s%n",
+                name, actualJournalMode, actualSynchronous, actualBusyTimeoutMs, actualCacheSize,
+                actualMmapSize >> 20, actualTempStore);
+
+        List<String> problems = new ArrayList<>();
+        compare(problems, "journal_mode", journalMode, actualJournalMode);
+        compare(problems, "synchronous", synchronous, actualSynchronous);
+        compare(problems, "busy_timeout", busyTimeoutMs, actualBusyTimeoutMs);
+        compare(problems, "cache_size", cacheSize, actualCacheSize);
+        compare(problems, "mmap_size", mmapSize, actualMmapSize);
+        compare(problems, "temp_store", tempStore, actualTempStore);
+        return problems;
+    }
+
+    /**
+     * One line for the stats report, once check() has run.
+     */
+    String describe() {
+        return active;
+    }
+
+    private static void compare(List<String> problems, String pragma, Object wanted, Object actual) {
+        if (!wanted.equals(actual)) {
+            problems.add("SQLite " + pragma + " is " + actual + " instead of " + wanted);
+        }
+    }
+
+    private static String read(Connection con, String pragma) throws SQLException {
+        try (Statement statement = con.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getString(1) : "";
+        }
+    }
+
+    // Only known keywords make it into a PRAGMA; anything else keeps the profile's value.
+    private static String setting(String variable, String value, Iterable<String> allowed) {
+        String override = env(variable);
+        if (override == null) {
+            return value;
+        }
+        for (String keyword : allowed) {
+            if (keyword.equalsIgnoreCase(override.trim())) {
+                return keyword;
+            }
+        }
+        System.out.println("Ignoring invalid value for " + variable + ": " + override);
+        return value;
+    }
+
+    private static long setting(String variable, long value) {
+        String override = env(variable);
+        if (override == null) {
+            return value;
+        }
+        try {
+            return Long.parseLong(override.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring invalid value for " + variable + ": " + override);
+            return value;
+        }
+    }
+
+    // the system property, if set, wins over the environment variable, as for DBPath
+    private static String env(String variable) {
+        String value = System.getProperty(variable, System.getenv(variable));
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
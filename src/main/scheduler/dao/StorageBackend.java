@@ -0,0 +1,121 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The database the scheduler runs against: how to connect to it, where its schema scripts live,
+ * and the DAOs that hold all SQL for its tables.
+ *
+ * The backend is picked once per process from the Backend system property or environment
+ * variable: "sqlite" (the default) or "postgres" / "aurora". The base DAOs use SQL that both
+ * databases understand; each backend swaps in subclasses where it has a faster way to do the
+ * same thing.
+ */
+public abstract class StorageBackend {
+
+    private static final StorageBackend instance = create(System.getProperty("Backend", System.getenv("Backend")));
+
+    private final AccountDao patients;
+    private final AccountDao caregivers;
+    private final AvailabilityDao availabilities;
+    private final VaccineDao vaccines;
+    private final AppointmentDao appointments;
+
+    protected StorageBackend(AccountDao patients, AccountDao caregivers, AvailabilityDao availabilities,
+                             VaccineDao vaccines, AppointmentDao appointments) {
+        this.patients = patients;
+        this.caregivers = caregivers;
+        this.availabilities = availabilities;
+        this.vaccines = vaccines;
+        this.appointments = appointments;
+    }
+
+    public static StorageBackend getInstance() {
+        return instance;
+    }
+
+    private static StorageBackend create(String name) {
+        if (name == null || name.isEmpty() || name.equalsIgnoreCase("sqlite")) {
+            return new SqliteBackend();
+        }
+        if (name.equalsIgnoreCase("postgres") || name.equalsIgnoreCase("aurora")) {
+            return new PostgresBackend();
+        }
+        throw new IllegalArgumentException("Unknown backend: " + name + " (expected sqlite, postgres or aurora)");
+    }
+
+    public abstract String getName();
+
+    public abstract String getDriverName();
+
+    public abstract String getUrl();
+
+    /**
+     * URL of a read replica, given one entry of the ReadEndpoints list.
+     */
+    public abstract String getReadUrl(String endpoint);
+
+    // null if the driver takes no credentials
+    public abstract String getUser();
+
+    public abstract String getPassword();
+
+    /**
+     * Resource directory MigrationRunner reads this backend's create script and migrations from.
+     */
+    public abstract String getSchemaDirectory();
+
+    public abstract String getCreateScript();
+
+    /**
+     * Called once on every new physical connection before the pool hands it out.
+     */
+    public void initialize(Connection con) throws SQLException {
+    }
+
+    /**
+     * Reads back from a connection the settings initialize() applied and returns a line for each
+     * one that did not take effect.
+     */
+    public List<String> checkSettings(Connection con) throws SQLException {
+        return List.of();
+    }
+
+    /**
+     * The settings read by the last checkSettings(), as one line for the stats report; null if
+     * the backend applies none.
+     */
+    public String describeSettings() {
+        return null;
+    }
+
+    public AccountDao patients() {
+        return patients;
+    }
+
+    public AccountDao caregivers() {
+        return caregivers;
+    }
+
+    public AvailabilityDao availabilities() {
+        return availabilities;
+    }
+
+    public VaccineDao vaccines() {
+        return vaccines;
+    }
+
+    public AppointmentDao appointments() {
+        return appointments;
+    }
+
+    /**
+     * The counter the event journal checks at startup instead of scanning tables; null if the
+     * backend keeps none, in which case the journal is not used.
+     */
+    public ChangeCounterDao changes() {
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+package scheduler.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Vaccine stock: the Vaccines table and the DoseLedger of changes not yet folded into it.
+ * Counts are only ever changed relative to the stored value, so concurrent changes to the same
+ * vaccine are never overwritten.
+ */
+public class VaccineDao {
+
+    private static final String INSERT = "INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)";
+    private static final String SELECT_ONE = "SELECT Doses FROM Vaccines WHERE Name = ?";
+    private static final String SELECT_ALL = "SELECT Name, Doses FROM Vaccines ORDER BY Name ASC";
+    private static final String ADD_DOSES = "UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?";
+    // only succeeds if the stored count still covers the doses taken
+    private static final String TAKE_DOSES = "UPDATE Vaccines SET Doses = Doses - ? WHERE Name = ? AND Doses >= ?";
+    private static final String APPEND_LEDGER = "INSERT INTO DoseLedger (VaccineName, Delta) VALUES (?, ?)";
+    // takes exactly the entries it folds, so rows committed concurrently wait for the next fold
+    private static final String DRAIN_LEDGER = "DELETE FROM DoseLedger RETURNING VaccineName, Delta";
+
+    VaccineDao() {
+    }
+
+    public void insert(Connection con, String vaccineName, int doses) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(INSERT)) {
+            statement.setString(1, vaccineName);
+            statement.setInt(2, doses);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns the stored dose count, or null if the vaccine is unknown.
+     */
+    public Integer findDoses(Connection con, String vaccineName) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(SELECT_ONE)) {
+            statement.setString(1, vaccineName);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt("Doses") : null;
+            }
+        }
+    }
+
+    /**
+     * Stored dose counts of all vaccines, ordered by name.
+     */
+    public Map<String, Integer> findAll(Connection con) throws SQLException {
+        Map<String, Integer> doses = new LinkedHashMap<>();
+        try (PreparedStatement statement = con.prepareStatement(SELECT_ALL);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                doses.put(rs.getString("Name"), rs.getInt("Doses"));
+            }
+        }
+        return doses;
+    }
+
+    /**
+     * Adds num doses (which may be negative) to the stored count. Returns false if the vaccine
+     * is unknown.
+     */
+    public boolean addDoses(Connection con, String vaccineName, int num) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(ADD_DOSES)) {
+            statement.setInt(1, num);
+            statement.setString(2, vaccineName);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Takes num doses if the stored count covers them. Returns false (and takes nothing) otherwise.
+     */
+    public boolean takeDoses(Connection con, String vaccineName, int num) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(TAKE_DOSES)) {
+            statement.setInt(1, num);
+            statement.setString(2, vaccineName);
+            statement.setInt(3, num);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Appends a dose change to the ledger, inside the caller's transaction.
+     */
+    public void appendLedger(Connection con, String vaccineName, int delta) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(APPEND_LEDGER)) {
+            statement.setString(1, vaccineName);
+            statement.setInt(2, delta);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Removes all ledger entries written so far and adds them to the stored counts. Must run
+     * inside a transaction.
+     */
+    public void foldLedger(Connection con) throws SQLException {
+        Map<String, Integer> totals = new HashMap<>();
+        try (PreparedStatement statement = con.prepareStatement(DRAIN_LEDGER);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                totals.merge(rs.getString("VaccineName"), rs.getInt("Delta"), Integer::sum);
+            }
+        }
+        if (totals.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = con.prepareStatement(ADD_DOSES)) {
+            for (Map.Entry<String, Integer> total : totals.entrySet()) {
+                statement.setInt(1, total.getValue());
+                statement.setString(2, total.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+}
@@ -1,43 +1,218 @@
 package scheduler.db;
 
+import scheduler.dao.StorageBackend;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ConnectionManager {
 
-    private final String driverName = "org.sqlite.JDBC";
-    private final String connectionUrl = "jdbc:sqlite:" + System.getenv("DBPath");
-    //private final String connectionUrl = "jdbc:sqlite:" + "C:/Users/samru/OneDrive - UW/Documents/WI 25/CSE 414-Sam/Homework/HW 6/hw6.db";
+    // SQLite or Postgres/Aurora, picked by the Backend environment variable
+    private static final StorageBackend backend = StorageBackend.getInstance();
 
-    private Connection con = null;
+    // where MigrationRunner finds this backend's create script and migrations
+    public static final String SCHEMA_DIRECTORY = backend.getSchemaDirectory();
+    public static final String CREATE_SCRIPT = backend.getCreateScript();
+
+    // pool settings, overridable through environment variables
+    private static final int minIdle = envInt("PoolMinIdle", 2);
+    private static final int maxSize = envInt("PoolMaxSize", 10);
+    private static final long borrowTimeoutMs = envInt("PoolBorrowTimeoutMs", 5000);
+    private static final long idleTimeoutMs = envInt("PoolIdleTimeoutMs", 60000);
+    private static final long leakThresholdMs = envInt("PoolLeakThresholdMs", 30000);
+
+    // read replicas: comma-separated endpoints, and how far behind the primary one may be to take reads
+    private static final String readEndpoints = System.getenv("ReadEndpoints");
+    private static final long readMaxLagMs = envInt("ReadMaxLagMs", 5000);
+
+    // group commit: most writes per group, and how long the first write waits for others; by
+    // default a group is whatever queued up while the previous one committed
+    private static final int writeGroupSize = envInt("WriteGroupSize", 64);
+    private static final long writeGroupWaitMs = envInt("WriteGroupWaitMs", 0);
 
-    
+    private static volatile ConnectionPool pool = null;
+    private static volatile ReadRouter readRouter = null;
+    private static volatile WritePipeline writePipeline = null;
+
+    private Connection con = null;
+    private boolean onReplica = false;
 
     public ConnectionManager() {
-        
-        try {
-            Class.forName(driverName);
-            
-        } catch (ClassNotFoundException e) {
-            System.out.println(e.toString());
+    }
+
+    /**
+     * Returns the process-wide pool, creating it (and loading the driver) on first use.
+     */
+    public static ConnectionPool getPool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (ConnectionManager.class) {
+                p = pool;
+                if (p == null) {
+                    try {
+                        Class.forName(backend.getDriverName());
+                    } catch (ClassNotFoundException e) {
+                        System.out.println(e.toString());
+                    }
+                    p = new ConnectionPool(backend.getUrl(), backend.getUser(), backend.getPassword(), minIdle,
+                            maxSize, borrowTimeoutMs, idleTimeoutMs, leakThresholdMs, backend::initialize);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Returns the process-wide read router, creating it and starting its heartbeat on first use.
+     * Without ReadEndpoints it has no replicas and sends every read to the primary.
+     */
+    public static ReadRouter getReadRouter() {
+        ReadRouter r = readRouter;
+        if (r == null) {
+            synchronized (ConnectionManager.class) {
+                r = readRouter;
+                if (r == null) {
+                    List<ReadRouter.Replica> replicas = new ArrayList<>();
+                    if (readEndpoints != null) {
+                        for (String endpoint : readEndpoints.split(",")) {
+                            endpoint = endpoint.trim();
+                            if (!endpoint.isEmpty()) {
+                                replicas.add(new ReadRouter.Replica(endpoint, new ConnectionPool(
+                                        backend.getReadUrl(endpoint), backend.getUser(), backend.getPassword(), 0,
+                                        maxSize, borrowTimeoutMs, idleTimeoutMs, leakThresholdMs, backend::initialize)));
+                            }
+                        }
+                    }
+                    r = new ReadRouter(replicas, readMaxLagMs);
+                    r.start();
+                    readRouter = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Returns the process-wide group-commit pipeline, starting its writer thread on first use.
+     */
+    public static WritePipeline getWritePipeline() {
+        WritePipeline w = writePipeline;
+        if (w == null) {
+            synchronized (ConnectionManager.class) {
+                w = writePipeline;
+                if (w == null) {
+                    w = new WritePipeline(writeGroupSize, writeGroupWaitMs);
+                    w.start();
+                    writePipeline = w;
+                }
+            }
+        }
+        return w;
+    }
+
+    // The getExisting* methods return null instead of creating the component, for reporting.
+
+    public static ConnectionPool getExistingPool() {
+        return pool;
+    }
+
+    public static ReadRouter getExistingReadRouter() {
+        return readRouter;
+    }
+
+    public static WritePipeline getExistingWritePipeline() {
+        return writePipeline;
+    }
+
+    public static void shutdown() {
+        synchronized (ConnectionManager.class) {
+            // its last group still needs the pool
+            if (writePipeline != null) {
+                writePipeline.close();
+                writePipeline = null;
+            }
+            if (readRouter != null) {
+                readRouter.close();
+                readRouter = null;
+            }
+            if (pool != null) {
+                pool.close();
+                pool = null;
+            }
         }
     }
 
     public Connection createConnection() {
+        // inside a batch group, everything on this thread joins the group's transaction
+        SharedTransaction shared = SharedTransaction.current();
+        if (shared != null) {
+            con = shared.getConnection();
+            return con;
+        }
         try {
-            con = DriverManager.getConnection(connectionUrl);
+            con = getPool().borrow();
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return con;
     }
 
+    /**
+     * Like createConnection(), but for read-only work, which may be served by a replica. The
+     * caller passes the time its own last write finished (0 if none) so it never reads from a
+     * replica that does not show that write yet.
+     */
+    public Connection createReadConnection(long writtenAt) {
+        if (SharedTransaction.current() == null) {
+            ConnectionPool replica = getReadRouter().choose(writtenAt);
+            if (replica != null) {
+                try {
+                    con = replica.borrow();
+                    onReplica = true;
+                    return con;
+                } catch (SQLException e) {
+                    // the primary can always serve the read
+                }
+            }
+        }
+        return createConnection();
+    }
+
+    /**
+     * Whether the connection handed out last came from a replica, and so may lag the primary.
+     */
+    public boolean isOnReplica() {
+        return onReplica;
+    }
+
+    // Returns the connection to the pool. Safe to call more than once.
     public void closeConnection() {
+        if (this.con == null) {
+            return;
+        }
         try {
             this.con.close();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            this.con = null;
+            this.onReplica = false;
+        }
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Ignoring invalid value for " + name + ": " + value);
+            return defaultValue;
         }
     }
 }
@@ -0,0 +1,458 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of physical JDBC connections.
+ *
+ * Callers get a logical connection (a proxy) from borrow(); calling close() on it hands the
+ * physical connection back to the pool instead of closing it. Any statements the caller left
+ * open are closed on return, and an open transaction is rolled back. Statements are wrapped so
+ * their executions show up in {@link Metrics}.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minIdle;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long leakThresholdMs;
+    private final long validationIntervalMs;
+    // run on each new physical connection, e.g. to set session options; may be null
+    private final Initializer initializer;
+
+    // idle connections, most recently returned first so hot connections get reused
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    // one permit per connection that may be handed out, so at most maxSize are ever open
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+
+    // metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsClosed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Prepares a freshly opened physical connection before it is first handed out.
+     */
+    @FunctionalInterface
+    public interface Initializer {
+        void initialize(Connection con) throws SQLException;
+    }
+
+    public ConnectionPool(String url, String user, String password, int minIdle, int maxSize,
+                          long borrowTimeoutMs, long idleTimeoutMs, long leakThresholdMs) {
+        this(url, user, password, minIdle, maxSize, borrowTimeoutMs, idleTimeoutMs, leakThresholdMs, null);
+    }
+
+    public ConnectionPool(String url, String user, String password, int minIdle, int maxSize,
+                          long borrowTimeoutMs, long idleTimeoutMs, long leakThresholdMs, Initializer initializer) {
+        if (maxSize <= 0 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min " + minIdle + ", max " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.validationIntervalMs = 500;
+        this.initializer = initializer;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMs, leakThresholdMs) / 2);
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+        fillToMinIdle();
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout if all maxSize connections are in use.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMs + " ms waiting for a connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection");
+        }
+
+        PooledConnection pc;
+        try {
+            pc = takeValidIdle();
+            if (pc == null) {
+                pc = open();
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        long waited = System.nanoTime() - start;
+        borrowCount.incrementAndGet();
+        borrowWaitNanos.addAndGet(waited);
+        maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+        Metrics.getInstance().recordConnectionAcquire(waited);
+
+        pc.borrowedAt = System.currentTimeMillis();
+        pc.borrowSite = leakThresholdMs > 0 ? new Throwable("Connection borrowed here") : null;
+        pc.leakReported = false;
+        borrowed.add(pc);
+        return pc.newHandle();
+    }
+
+    private PooledConnection takeValidIdle() {
+        while (true) {
+            PooledConnection pc;
+            synchronized (idle) {
+                pc = idle.pollFirst();
+            }
+            if (pc == null) {
+                return null;
+            }
+            if (isValid(pc)) {
+                return pc;
+            }
+            validationFailures.incrementAndGet();
+            closePhysical(pc);
+        }
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        // skip the round trip for connections that were in use a moment ago
+        if (System.currentTimeMillis() - pc.returnedAt < validationIntervalMs) {
+            return true;
+        }
+        try {
+            return !pc.physical.isClosed() && pc.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = user == null
+                ? DriverManager.getConnection(url)
+                : DriverManager.getConnection(url, user, password);
+        if (initializer != null) {
+            try {
+                initializer.initialize(physical);
+            } catch (SQLException e) {
+                physical.close();
+                throw e;
+            }
+        }
+        connectionsOpened.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pc) {
+        if (!borrowed.remove(pc)) {
+            return;
+        }
+        boolean reusable = !closed && pc.reset();
+        if (reusable) {
+            pc.returnedAt = System.currentTimeMillis();
+            synchronized (idle) {
+                idle.addFirst(pc);
+            }
+        } else {
+            closePhysical(pc);
+        }
+        permits.release();
+    }
+
+    private void closePhysical(PooledConnection pc) {
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            // the connection is being thrown away anyway
+        }
+        connectionsClosed.incrementAndGet();
+    }
+
+    private void fillToMinIdle() {
+        while (!closed && idleCount() + borrowed.size() < minIdle && permits.tryAcquire()) {
+            try {
+                PooledConnection pc = open();
+                pc.returnedAt = System.currentTimeMillis();
+                synchronized (idle) {
+                    idle.addLast(pc);
+                }
+            } catch (SQLException e) {
+                System.out.println("Could not pre-open pooled connection: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // evict connections that sat idle too long, but keep minIdle around
+        List<PooledConnection> evicted = new ArrayList<>();
+        synchronized (idle) {
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                PooledConnection pc = it.next();
+                if (now - pc.returnedAt > idleTimeoutMs) {
+                    it.remove();
+                    evicted.add(pc);
+                }
+            }
+        }
+        evicted.forEach(this::closePhysical);
+        fillToMinIdle();
+
+        if (leakThresholdMs > 0) {
+            for (PooledConnection pc : borrowed) {
+                if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMs) {
+                    pc.leakReported = true;
+                    leaksDetected.incrementAndGet();
+                    System.out.println("Possible connection leak: connection held for "
+                            + (now - pc.borrowedAt) + " ms");
+                    if (pc.borrowSite != null) {
+                        pc.borrowSite.printStackTrace(System.out);
+                    }
+                }
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        List<PooledConnection> toClose;
+        synchronized (idle) {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(this::closePhysical);
+    }
+
+    private int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    // Metrics
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public int getIdleCount() {
+        return idleCount();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public double getAverageBorrowWaitMicros() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : borrowWaitNanos.get() / 1000.0 / count;
+    }
+
+    public double getMaxBorrowWaitMicros() {
+        return maxBorrowWaitNanos.get() / 1000.0;
+    }
+
+    public long getBorrowTimeouts() {
+        return borrowTimeouts.get();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    public long getConnectionsClosed() {
+        return connectionsClosed.get();
+    }
+
+    public long getValidationFailures() {
+        return validationFailures.get();
+    }
+
+    public long getLeaksDetected() {
+        return leaksDetected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", max=" + maxSize +
+                ", borrows=" + getBorrowCount() +
+                ", avgWaitMicros=" + String.format("%.1f", getAverageBorrowWaitMicros()) +
+                ", maxWaitMicros=" + String.format("%.1f", getMaxBorrowWaitMicros()) +
+                ", timeouts=" + getBorrowTimeouts() +
+                ", opened=" + getConnectionsOpened() +
+                ", closed=" + getConnectionsClosed() +
+                ", validationFailures=" + getValidationFailures() +
+                ", leaks=" + getLeaksDetected() +
+                '}';
+    }
+
+    /**
+     * One physical connection plus the bookkeeping the pool needs for it.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        // statements opened through the current handle, closed when it is returned
+        private final List<Statement> statements = new ArrayList<>();
+        private volatile long borrowedAt;
+        private volatile long returnedAt;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+
+        // Puts the connection back into a clean state; returns false if it should be discarded.
+        private boolean reset() {
+            synchronized (statements) {
+                for (Statement s : statements) {
+                    try {
+                        s.close();
+                    } catch (SQLException e) {
+                        // ignore, the statement is unusable anyway
+                    }
+                }
+                statements.clear();
+            }
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                physical.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The logical connection handed to callers. Only valid until close() is called on it.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean returned = false;
+
+        private Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.physical + "]";
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            Object result;
+            try {
+                result = method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                synchronized (pc.statements) {
+                    pc.statements.add((Statement) result);
+                }
+                // time executions per SQL text; callable statements are not used and stay unwrapped
+                if (name.equals("prepareStatement")) {
+                    return InstrumentedStatement.wrap((PreparedStatement) result, (String) args[0]);
+                }
+                if (name.equals("createStatement")) {
+                    return InstrumentedStatement.wrap((Statement) result);
+                }
+            }
+            return result;
+        }
+    }
+}
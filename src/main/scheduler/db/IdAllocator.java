@@ -0,0 +1,83 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Hands out unique, increasing IDs from a named row in the Sequences table using the hi/lo
+ * scheme: each trip to the database reserves a block of blockSize IDs, which are then handed
+ * out from memory. IDs from a block that is never used (e.g. on restart) are simply skipped.
+ */
+public class IdAllocator {
+
+    private static final String RESERVE_BLOCK =
+            "UPDATE Sequences SET NextValue = NextValue + ? WHERE Name = ? RETURNING NextValue";
+    private static final String CREATE_SEQUENCE =
+            "INSERT INTO Sequences (Name, NextValue) VALUES (?, ?) ON CONFLICT (Name) DO NOTHING";
+
+    private final String sequenceName;
+    private final int blockSize;
+    // starting value used if the sequence row does not exist yet
+    private final String seedQuery;
+
+    // IDs in [next, limit) belong to this allocator
+    private long next = 0;
+    private long limit = 0;
+
+    public IdAllocator(String sequenceName, int blockSize, String seedQuery) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive!");
+        }
+        this.sequenceName = sequenceName;
+        this.blockSize = blockSize;
+        this.seedQuery = seedQuery;
+    }
+
+    public synchronized long nextId() throws SQLException {
+        if (next >= limit) {
+            long hi = reserveBlock();
+            next = hi - blockSize;
+            limit = hi;
+        }
+        return next++;
+    }
+
+    // Runs in its own short transaction so the block stays reserved even if the caller's
+    // transaction rolls back. Returns the exclusive upper end of the new block.
+    private long reserveBlock() throws SQLException {
+        return Transactions.run(con -> {
+            Long hi = advance(con);
+            if (hi == null) {
+                long seed = 1;
+                try (PreparedStatement statement = con.prepareStatement(seedQuery);
+                     ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        seed = Math.max(1, rs.getLong(1));
+                    }
+                }
+                try (PreparedStatement statement = con.prepareStatement(CREATE_SEQUENCE)) {
+                    statement.setString(1, sequenceName);
+                    statement.setLong(2, seed);
+                    statement.executeUpdate();
+                }
+                hi = advance(con);
+            }
+            if (hi == null) {
+                throw new SQLException("Sequence " + sequenceName + " could not be created");
+            }
+            return hi;
+        });
+    }
+
+    private Long advance(Connection con) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(RESERVE_BLOCK)) {
+            statement.setInt(1, blockSize);
+            statement.setString(2, sequenceName);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package scheduler.db;
+
+import scheduler.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Wraps statements handed out by the pool so every execution is timed, and every row read
+ * from its result sets counted, under the statement's SQL text in {@link Metrics}.
+ */
+final class InstrumentedStatement implements InvocationHandler {
+
+    private final Statement target;
+    // null for plain Statements, whose SQL is only known when they execute
+    private final Metrics.StatementMetrics prepared;
+
+    private InstrumentedStatement(Statement target, Metrics.StatementMetrics prepared) {
+        this.target = target;
+        this.prepared = prepared;
+    }
+
+    static PreparedStatement wrap(PreparedStatement statement, String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new InstrumentedStatement(statement, Metrics.getInstance().statement(sql)));
+    }
+
+    static Statement wrap(Statement statement) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[]{Statement.class},
+                new InstrumentedStatement(statement, null));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (!name.startsWith("execute")) {
+            Object result = call(method, args);
+            if (result instanceof ResultSet && name.equals("getResultSet")) {
+                return countRows((ResultSet) result, prepared);
+            }
+            return result;
+        }
+
+        Metrics.StatementMetrics metrics = prepared;
+        if (args != null && args.length > 0 && args[0] instanceof String) {
+            metrics = Metrics.getInstance().statement((String) args[0]);
+        } else if (metrics == null) {
+            metrics = Metrics.getInstance().statement("(statement batch)");
+        }
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = call(method, args);
+        } finally {
+            metrics.recordExecution(System.nanoTime() - start);
+        }
+        if (result instanceof ResultSet) {
+            return countRows((ResultSet) result, metrics);
+        }
+        return result;
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ResultSet countRows(ResultSet rs, Metrics.StatementMetrics metrics) {
+        if (metrics == null) {
+            return rs;
+        }
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(rs, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                        metrics.recordRow();
+                    }
+                    return result;
+                });
+    }
+}
@@ -0,0 +1,184 @@
+package scheduler.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings the database schema up to date at startup.
+ *
+ * Version 1 is the backend's create script; later versions are the files in its migrations
+ * directory, applied in order. Each migration runs in its own transaction together with the
+ * SchemaVersion row that records it, so a failed migration leaves no trace and is retried on
+ * the next start. A database that was created by hand from the create script (tables exist but
+ * SchemaVersion does not) is recorded as being at version 1 before the rest are applied.
+ */
+public class MigrationRunner {
+
+    private static final String CREATE_VERSION_TABLE =
+            "CREATE TABLE IF NOT EXISTS SchemaVersion (" +
+            "Version int, Name varchar(255), AppliedAt timestamp, PRIMARY KEY (Version))";
+    private static final String SELECT_VERSIONS = "SELECT Version FROM SchemaVersion";
+    private static final String RECORD_VERSION =
+            "INSERT INTO SchemaVersion (Version, Name, AppliedAt) VALUES (?, ?, ?)";
+
+    // follow-up migrations, in order; version = position + 2
+    private static final String[] MIGRATIONS = {
+            "002_appointment_id.sql",
+            "003_dose_ledger.sql",
+            "004_indexes.sql",
+            "005_replication_heartbeat.sql",
+            "006_change_counter.sql",
+    };
+
+    private final String schemaDirectory;
+    private final String createScript;
+    private final PrintStream out;
+
+    /**
+     * @param schemaDirectory resource directory of the backend, e.g. "sqlite" or "aurora"
+     * @param createScript    name of the version 1 script inside that directory
+     */
+    public MigrationRunner(String schemaDirectory, String createScript, PrintStream out) {
+        this.schemaDirectory = schemaDirectory;
+        this.createScript = createScript;
+        this.out = out;
+    }
+
+    /**
+     * Applies every migration that is not recorded yet. Returns how many were applied.
+     */
+    public int migrate() throws SQLException, IOException {
+        Set<Integer> applied = appliedVersions();
+        int count = 0;
+
+        if (!applied.contains(1)) {
+            if (tableExists("Caregivers")) {
+                // created by hand from the create script before migrations were tracked
+                Transactions.run(con -> {
+                    record(con, 1, createScript);
+                    return null;
+                });
+            } else {
+                apply(1, createScript, read(schemaDirectory + "/" + createScript));
+                count++;
+            }
+        }
+
+        for (int i = 0; i < MIGRATIONS.length; i++) {
+            int version = i + 2;
+            if (!applied.contains(version)) {
+                apply(version, MIGRATIONS[i], read(schemaDirectory + "/migrations/" + MIGRATIONS[i]));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void apply(int version, String name, String script) throws SQLException {
+        Transactions.run(con -> {
+            try (Statement statement = con.createStatement()) {
+                for (String sql : split(script)) {
+                    statement.execute(sql);
+                }
+            }
+            record(con, version, name);
+            return null;
+        });
+        out.println("Applied schema migration " + version + " (" + name + ")");
+    }
+
+    private static void record(Connection con, int version, String name) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(RECORD_VERSION)) {
+            statement.setInt(1, version);
+            statement.setString(2, name);
+            statement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            statement.executeUpdate();
+        }
+    }
+
+    private static Set<Integer> appliedVersions() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try (Statement statement = con.createStatement()) {
+            statement.execute(CREATE_VERSION_TABLE);
+            Set<Integer> versions = new HashSet<>();
+            try (ResultSet rs = statement.executeQuery(SELECT_VERSIONS)) {
+                while (rs.next()) {
+                    versions.add(rs.getInt("Version"));
+                }
+            }
+            return versions;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private static boolean tableExists(String table) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            // Postgres folds unquoted names to lower case, SQLite keeps them as written
+            for (String name : new String[]{table, table.toLowerCase()}) {
+                try (ResultSet rs = con.getMetaData().getTables(null, null, name, null)) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // Loads a script from the classpath, or from src/main/resources when run from the source tree.
+    private static String read(String resource) throws IOException {
+        try (InputStream in = MigrationRunner.class.getResourceAsStream("/" + resource)) {
+            if (in != null) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        Path path = Paths.get("src", "main", "resources", resource);
+        if (Files.exists(path)) {
+            return Files.readString(path, StandardCharsets.UTF_8);
+        }
+        throw new IOException("Migration script not found: " + resource);
+    }
+
+    // Splits a script into statements on semicolons at the end of a line, dropping -- comments.
+    static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : script.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String sql = current.toString().trim();
+                statements.add(sql.substring(0, sql.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,187 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spreads read-only work over replicas of the primary database so reads during a booking rush
+ * do not compete with reservations for the primary's connections.
+ *
+ * While replicas are configured, the primary stamps the current time into ReplicationHeartbeat
+ * every HEARTBEAT_INTERVAL_MS and each replica's copy of that row is polled at the same rate.
+ * A replica takes a read only if its newest heartbeat is at most maxLagMs old and, when the
+ * caller wrote something itself, was stamped after that write finished: replication applies
+ * commits in order, so such a replica already shows the write. Reads that no replica qualifies
+ * for go to the primary.
+ */
+public class ReadRouter {
+
+    private static final String STAMP =
+            "INSERT INTO ReplicationHeartbeat (ID, BeatAt) VALUES (1, ?) " +
+            "ON CONFLICT (ID) DO UPDATE SET BeatAt = excluded.BeatAt";
+    private static final String READ_STAMP = "SELECT BeatAt FROM ReplicationHeartbeat WHERE ID = 1";
+    private static final long HEARTBEAT_INTERVAL_MS = 1000;
+
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    // where the next read starts looking, so reads rotate over the replicas
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService heartbeat = null;
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder staleReads = new LongAdder();
+    private final LongAdder stickyReads = new LongAdder();
+
+    ReadRouter(List<Replica> replicas, long maxLagMs) {
+        this.replicas = replicas;
+        this.maxLagMs = maxLagMs;
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * Starts stamping the primary and polling the replicas. Does nothing without replicas.
+     */
+    synchronized void start() {
+        if (heartbeat != null || replicas.isEmpty()) {
+            return;
+        }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleWithFixedDelay(() -> {
+            stamp();
+            for (Replica replica : replicas) {
+                poll(replica);
+            }
+        }, 0, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void close() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    /**
+     * Picks a replica for a read by a caller whose last write finished at writtenAt (0 if it
+     * never wrote), or returns null if the read has to go to the primary.
+     */
+    ConnectionPool choose(long writtenAt) {
+        if (replicas.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        boolean behindWrite = false;
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            long beatAt = replica.beatAt;
+            if (!replica.reachable || now - beatAt > maxLagMs) {
+                continue;
+            }
+            if (beatAt <= writtenAt) {
+                behindWrite = true;
+                continue;
+            }
+            replicaReads.increment();
+            return replica.pool;
+        }
+        (behindWrite ? stickyReads : staleReads).increment();
+        return null;
+    }
+
+    /**
+     * One line per replica with its lag, plus where reads went; empty without replicas.
+     */
+    public String describe() {
+        if (replicas.isEmpty()) {
+            return "";
+        }
+        StringBuilder report = new StringBuilder();
+        report.append("Reads: ").append(replicaReads.sum()).append(" on replicas, ")
+                .append(staleReads.sum()).append(" on primary (replicas too far behind), ")
+                .append(stickyReads.sum()).append(" on primary (read-your-writes)\n");
+        long now = System.currentTimeMillis();
+        for (Replica replica : replicas) {
+            report.append("Replica ").append(replica.endpoint).append(": ");
+            if (!replica.reachable) {
+                report.append("unreachable\n");
+            } else {
+                report.append(now - replica.beatAt).append(" ms behind\n");
+            }
+        }
+        return report.toString();
+    }
+
+    // Writes the heartbeat row on the primary. If this fails the replicas simply look stale.
+    private void stamp() {
+        try {
+            Transactions.run(con -> {
+                try (PreparedStatement statement = con.prepareStatement(STAMP)) {
+                    statement.setLong(1, System.currentTimeMillis());
+                    statement.executeUpdate();
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            // retried on the next beat
+        }
+    }
+
+    private static void poll(Replica replica) {
+        try {
+            Connection con = replica.pool.borrow();
+            try (PreparedStatement statement = con.prepareStatement(READ_STAMP);
+                 ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    replica.beatAt = rs.getLong("BeatAt");
+                }
+            } finally {
+                con.close();
+            }
+            replica.reachable = true;
+            if (replica.lost) {
+                replica.lost = false;
+                System.out.println("Read replica " + replica.endpoint + " is reachable again");
+            }
+        } catch (SQLException e) {
+            replica.reachable = false;
+            // reported once, not on every beat
+            if (!replica.lost) {
+                replica.lost = true;
+                System.out.println("Read replica " + replica.endpoint + " is unreachable: " + e.getMessage());
+            }
+        }
+    }
+
+    static class Replica {
+        private final String endpoint;
+        private final ConnectionPool pool;
+        // newest heartbeat seen on this replica, ms since the epoch
+        private volatile long beatAt = 0;
+        private volatile boolean reachable = false;
+        private volatile boolean lost = false;
+
+        Replica(String endpoint, ConnectionPool pool) {
+            this.endpoint = endpoint;
+            this.pool = pool;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package scheduler.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * One transaction shared by several commands run in a row on the same thread, so a batch of
+ * small writes pays for one commit instead of one per statement.
+ *
+ * While a shared transaction is open, ConnectionManager.createConnection() on its thread
+ * returns a view of the shared connection instead of borrowing one: close() and commit() on
+ * the view do nothing, and Transactions.run() nests its work in a savepoint. Callers wrap each
+ * command in mark()/release() and undo it with rollbackTo() if it failed, which keeps the rest
+ * of the group usable on Postgres, where any error otherwise aborts the whole transaction.
+ */
+public class SharedTransaction {
+
+    private static final ThreadLocal<SharedTransaction> current = new ThreadLocal<>();
+
+    private final ConnectionManager cm = new ConnectionManager();
+    private final Connection physical;
+    private final Connection view;
+    // innermost last; rollback() on the view goes back to the innermost one
+    private final Deque<Savepoint> savepoints = new ArrayDeque<>();
+    private boolean failed = false;
+
+    private SharedTransaction() throws SQLException {
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+        physical = con;
+        physical.setAutoCommit(false);
+        view = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new View());
+    }
+
+    /**
+     * Opens a shared transaction bound to the calling thread.
+     */
+    public static SharedTransaction begin() throws SQLException {
+        if (current.get() != null) {
+            throw new IllegalStateException("A shared transaction is already open on this thread");
+        }
+        SharedTransaction shared = new SharedTransaction();
+        current.set(shared);
+        return shared;
+    }
+
+    /**
+     * The calling thread's shared transaction, or null if there is none.
+     */
+    public static SharedTransaction current() {
+        return current.get();
+    }
+
+    public Connection getConnection() {
+        return view;
+    }
+
+    public Savepoint mark() throws SQLException {
+        Savepoint savepoint = physical.setSavepoint();
+        savepoints.addLast(savepoint);
+        return savepoint;
+    }
+
+    public void release(Savepoint savepoint) throws SQLException {
+        savepoints.remove(savepoint);
+        physical.releaseSavepoint(savepoint);
+    }
+
+    public void rollbackTo(Savepoint savepoint) throws SQLException {
+        physical.rollback(savepoint);
+        release(savepoint);
+    }
+
+    /**
+     * True if a statement failed since the last clearFailure().
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    public void clearFailure() {
+        failed = false;
+    }
+
+    /**
+     * Commits everything and unbinds the transaction from the thread.
+     */
+    public void commit() throws SQLException {
+        try {
+            physical.commit();
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Discards everything and unbinds the transaction from the thread.
+     */
+    public void rollback() {
+        try {
+            physical.rollback();
+        } catch (SQLException e) {
+            // the pool rolls back again when the connection is returned
+        } finally {
+            end();
+        }
+    }
+
+    private void end() {
+        current.remove();
+        savepoints.clear();
+        cm.closeConnection();
+    }
+
+    /**
+     * The connection handed to code running inside the shared transaction.
+     */
+    private final class View implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                case "commit":
+                case "setAutoCommit":
+                    // the owner of the shared transaction decides when it ends
+                    return null;
+                case "getAutoCommit":
+                    return false;
+                case "rollback":
+                    if (args == null || args.length == 0) {
+                        // undo back to the innermost savepoint, never the whole group
+                        Savepoint innermost = savepoints.peekLast();
+                        if (innermost == null) {
+                            failed = true;
+                        } else {
+                            physical.rollback(innermost);
+                        }
+                        return null;
+                    }
+                    break;
+                case "setSavepoint":
+                    return mark();
+                case "releaseSavepoint":
+                    release((Savepoint) args[0]);
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SharedTransaction[" + physical + "]";
+                default:
+                    break;
+            }
+            Object result = call(physical, method, args);
+            if (result instanceof Statement) {
+                return watch((Statement) result, method.getReturnType());
+            }
+            return result;
+        }
+    }
+
+    // Wraps a statement so that a failing execution marks the group as failed.
+    private Object watch(Statement statement, Class<?> type) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            try {
+                return call(statement, method, args);
+            } catch (SQLException e) {
+                if (method.getName().startsWith("execute")) {
+                    failed = true;
+                }
+                throw e;
+            }
+        });
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs a unit of work in a single transaction on a pooled connection, retrying with bounded
+ * exponential backoff when the database reports a transient conflict (SQLITE_BUSY/SQLITE_LOCKED
+ * on SQLite, serialization failures and deadlocks on Postgres).
+ */
+public class Transactions {
+
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long BASE_BACKOFF_MS = 5;
+    private static final long MAX_BACKOFF_MS = 250;
+
+    // SQLite primary result codes
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Connection con) throws SQLException;
+    }
+
+    private Transactions() {
+    }
+
+    public static <T> T run(Work<T> work) throws SQLException {
+        SharedTransaction shared = SharedTransaction.current();
+        if (shared != null) {
+            return runNested(shared, work);
+        }
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            ConnectionManager cm = new ConnectionManager();
+            Connection con = cm.createConnection();
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+            try {
+                con.setAutoCommit(false);
+                T result = work.run(con);
+                con.commit();
+                return result;
+            } catch (SQLException e) {
+                rollbackQuietly(con);
+                if (!isRetryable(e) || attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                cm.closeConnection();
+            }
+            backoff(attempt);
+        }
+    }
+
+    // Inside a shared transaction the work gets a savepoint instead of its own transaction. It
+    // is not retried: the shared transaction already holds its locks, so a conflict is final.
+    private static <T> T runNested(SharedTransaction shared, Work<T> work) throws SQLException {
+        Savepoint savepoint = shared.mark();
+        try {
+            T result = work.run(shared.getConnection());
+            shared.release(savepoint);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            shared.rollbackTo(savepoint);
+            throw e;
+        }
+    }
+
+    /**
+     * Rolls back the current transaction and makes the result of the work final. Use this when
+     * the work finds a business-level reason to stop (e.g. no doses left) after it has already
+     * written something. Inside a shared transaction only the work's own savepoint is undone.
+     */
+    public static <T> T abort(Connection con, T result) throws SQLException {
+        con.rollback();
+        return result;
+    }
+
+    public static boolean isRetryable(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                SQLException se = (SQLException) t;
+                String state = se.getSQLState();
+                // serialization_failure and deadlock_detected on Postgres
+                if ("40001".equals(state) || "40P01".equals(state)) {
+                    return true;
+                }
+                // sqlite-jdbc reports the (possibly extended) result code as the error code
+                int primary = se.getErrorCode() & 0xff;
+                if (primary == SQLITE_BUSY || primary == SQLITE_LOCKED) {
+                    return true;
+                }
+                String message = se.getMessage();
+                if (message != null && (message.contains("SQLITE_BUSY") || message.contains("SQLITE_LOCKED"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void rollbackQuietly(Connection con) {
+        try {
+            if (!con.getAutoCommit()) {
+                con.rollback();
+            }
+        } catch (SQLException e) {
+            // the pool resets the connection when it is returned
+        }
+    }
+
+    private static void backoff(int attempt) throws SQLException {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 10));
+        // full jitter so retrying clients do not collide again in lockstep
+        long sleep = ThreadLocalRandom.current().nextLong(cap + 1);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying transaction");
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package scheduler.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for small independent writes coming from many sessions at once (new accounts,
+ * availability uploads, added doses).
+ *
+ * submit() queues the write and returns a future. A single writer thread takes whatever is
+ * queued, up to maxGroupSize writes and waiting at most maxWaitMs after the first for more to
+ * arrive, and runs the group as one SharedTransaction with a savepoint per write, so one
+ * failing write is undone without affecting the others. Each future completes once the group
+ * has committed, or with the write's own error. The database syncs once per group instead of
+ * once per write, so throughput grows with the group size rather than being bound by sync
+ * latency.
+ *
+ * A write that hits a lock conflict inside the group, or all of them if the group cannot
+ * commit, is run again on its own through Transactions.run() with its usual retries. Inside a
+ * SharedTransaction of the caller (batch mode) the write runs there and then, as part of it.
+ */
+public class WritePipeline {
+
+    private final int maxGroupSize;
+    private final long maxWaitMs;
+    private final BlockingQueue<Write<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // queued by close(); the writer commits what it has and stops when it takes it
+    private final Write<Void> stop = new Write<>(con -> null);
+    private volatile boolean closed = false;
+
+    // written only by the writer thread
+    private volatile long writes = 0;
+    private volatile long groups = 0;
+    private volatile long largestGroup = 0;
+    private volatile long failed = 0;
+    private volatile long retriedAlone = 0;
+
+    public WritePipeline(int maxGroupSize, long maxWaitMs) {
+        this.maxGroupSize = Math.max(1, maxGroupSize);
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+        writer = new Thread(this::run, "write-pipeline");
+        writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    /**
+     * Queues the work for the next group. The returned future completes with the work's result
+     * once its group has committed, or exceptionally with the SQLException it failed with.
+     */
+    public <T> CompletableFuture<T> submit(Transactions.Work<T> work) {
+        if (closed || SharedTransaction.current() != null) {
+            // part of the caller's own transaction, or too late to queue: run it here
+            try {
+                return CompletableFuture.completedFuture(Transactions.run(work));
+            } catch (SQLException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        Write<T> write = new Write<>(work);
+        queue.add(write);
+        return write.future;
+    }
+
+    /**
+     * Waits for a submitted write and returns its result, rethrowing the SQLException it failed
+     * with.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Commits whatever is queued and stops the writer thread. Later submits run on their own.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(stop);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // anything that slipped in after the writer stopped
+        List<Write<?>> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (Write<?> write : rest) {
+            write.runAlone();
+        }
+    }
+
+    /**
+     * One line for the stats report.
+     */
+    public String describe() {
+        long g = groups;
+        return String.format("Write pipeline: %d writes in %d groups (%.1f per group, largest %d), "
+                        + "%d failed, %d retried alone%n",
+                writes, g, g == 0 ? 0.0 : (double) writes / g, largestGroup, failed, retriedAlone);
+    }
+
+    private void run() {
+        List<Write<?>> group = new ArrayList<>(maxGroupSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                Write<?> next = queue.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (next != null) {
+                    if (next == stop) {
+                        stopping = true;
+                        break;
+                    }
+                    group.add(next);
+                    if (group.size() == maxGroupSize) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            if (!group.isEmpty()) {
+                commit(group);
+                group.clear();
+            }
+        }
+    }
+
+    private void commit(List<Write<?>> group) {
+        List<Write<?>> alone = new ArrayList<>();
+        SharedTransaction transaction = null;
+        try {
+            transaction = SharedTransaction.begin();
+            for (Write<?> write : group) {
+                write.runInGroup(alone);
+            }
+            // commit() unbinds the transaction even if it fails
+            SharedTransaction committing = transaction;
+            transaction = null;
+            committing.commit();
+            for (Write<?> write : group) {
+                write.completeInGroup();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            // nothing of the group is in the database; give every write its own transaction
+            alone.clear();
+            alone.addAll(group);
+        }
+        for (Write<?> write : alone) {
+            retriedAlone++;
+            write.runAlone();
+        }
+        writes += group.size();
+        groups++;
+        largestGroup = Math.max(largestGroup, group.size());
+    }
+
+    private final class Write<T> {
+        private final Transactions.Work<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result = null;
+        private Exception error = null;
+        // left for runAlone() after a lock conflict in the group
+        private boolean deferred = false;
+
+        Write(Transactions.Work<T> work) {
+            this.work = work;
+        }
+
+        // Runs in its own savepoint of the group; a lock conflict defers it to alone instead.
+        void runInGroup(List<Write<?>> alone) {
+            try {
+                result = Transactions.run(work);
+            } catch (SQLException e) {
+                if (Transactions.isRetryable(e)) {
+                    deferred = true;
+                    alone.add(this);
+                } else {
+                    error = e;
+                }
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+
+        void completeInGroup() {
+            if (deferred) {
+                return;
+            }
+            if (error != null) {
+                failed++;
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+
+        void runAlone() {
+            try {
+                future.complete(Transactions.run(work));
+            } catch (SQLException | RuntimeException e) {
+                failed++;
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
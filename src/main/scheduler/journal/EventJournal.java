@@ -0,0 +1,800 @@
+package scheduler.journal;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.CaregiverLoad;
+import scheduler.cache.VaccineInventory;
+import scheduler.dao.ChangeCounterDao;
+import scheduler.dao.StorageBackend;
+import scheduler.db.ConnectionManager;
+import scheduler.db.SharedTransaction;
+import scheduler.db.Transactions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of everything that changes the in-memory indexes: reservations,
+ * cancellations, dose changes and availability uploads. Enabled by setting JournalPath.
+ *
+ * Each run starts a new journal with a snapshot of the indexes, then appends one record per
+ * transaction that changed them; a clean shutdown ends it with the final totals. On the next
+ * start the journal is replayed into the indexes instead of scanning the tables. The database
+ * stays the source of truth, and the journal is only trusted if it provably describes it:
+ * every journaled transaction calls begin() first, which takes the next number from the
+ * ChangeCounter row (migration 006), and end() last. Its record carries that number, so
+ * replay applies records in commit order whatever order concurrent threads appended them in,
+ * and a missing record shows up as a gap. Triggers count every other change to the tables
+ * behind the indexes into the same row. SQLite only (see StorageBackend.changes()).
+ *
+ * Records are written into memory-mapped regions of the file, so appending is a memory copy
+ * under a lock. A background thread forces written regions to disk in groups, one fsync per
+ * GROUP_COMMIT_MS however many events arrived; append returns a future that completes once the
+ * record is durable, and commands wait for it before they report success (see await()).
+ *
+ * Layout: an 8-byte header (magic, version), then records of [int length][int CRC-32][body]. A
+ * record never spans two regions; a length of -1 skips to the next region and 0 ends the data.
+ * A body is a type byte, the time in milliseconds, the sequence number and the type's fields.
+ */
+public class EventJournal {
+
+    private static final EventJournal instance = new EventJournal();
+
+    private static final int MAGIC = 0x534a4e4c;
+    // 2: records carry the sequence number from ChangeCounter
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int REGION_SIZE = 16 * 1024 * 1024;
+    private static final long GROUP_COMMIT_MS = 5;
+
+    // snapshot records, written once at the start of every journal
+    private static final byte SNAPSHOT_AVAILABILITY = 1;
+    private static final byte SNAPSHOT_DOSES = 2;
+    private static final byte SNAPSHOT_LOAD = 3;
+    // the sequence number the snapshot was taken at, and the External count of ChangeCounter
+    private static final byte SNAPSHOT_SEQUENCE = 4;
+    // events, one per journaled transaction
+    private static final byte RESERVE = 10;
+    private static final byte CANCEL = 11;
+    private static final byte DOSES = 12;
+    private static final byte AVAILABILITY = 13;
+    // a journaled transaction that left the indexes as they were, e.g. folding the dose ledger
+    private static final byte UNCHANGED = 14;
+    // the indexes were changed behind the journal's back; replaying it would be wrong
+    private static final byte STALE = 20;
+    private static final byte SHUTDOWN = 21;
+
+    // the JournalPath system property, if set, wins over the environment variable
+    private final String path = System.getProperty("JournalPath", System.getenv("JournalPath"));
+    private final ChangeCounterDao changes = StorageBackend.getInstance().changes();
+
+    private FileChannel lockChannel = null;
+    private FileChannel channel = null;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private long written = 0;
+    private long durable = 0;
+    private boolean closed = false;
+    private final Queue<Pending> pending = new ArrayDeque<>();
+    private Thread flusher = null;
+
+    private long events = 0;
+    private long fsyncs = 0;
+    private long replayed = 0;
+    private long replayMillis = 0;
+
+    private EventJournal() {
+    }
+
+    public static EventJournal getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return path != null && !path.isEmpty();
+    }
+
+    /**
+     * Takes the journal's lock file. Returns false if another process holds it, in which case
+     * this process must neither replay nor write the journal.
+     */
+    public synchronized boolean lock() throws IOException {
+        if (lockChannel != null) {
+            return true;
+        }
+        FileChannel lockFile = FileChannel.open(Paths.get(path + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = lockFile.tryLock();
+        if (lock == null) {
+            lockFile.close();
+            return false;
+        }
+        lockChannel = lockFile;
+        return true;
+    }
+
+    /**
+     * Rebuilds the availability index, vaccine inventory and caregiver load table from the
+     * journal of the previous run. Returns false, leaving the indexes alone, if there is no
+     * journal or it cannot be trusted, in which case the caller scans the tables.
+     *
+     * The only database read is the ChangeCounter row. The journal is trusted if its records
+     * run without a gap from the snapshot to the last transaction the database committed, the
+     * counter shows no change made outside journaled transactions since the snapshot, nothing
+     * marked it stale, and, after a clean shutdown, the replayed state matches the totals of the
+     * shutdown record. A crash therefore needs no scan unless it cut off a committed record.
+     */
+    public boolean recover() throws IOException, SQLException {
+        long start = System.nanoTime();
+        Replay replay = replay(Paths.get(path));
+        if (replay == null) {
+            return false;
+        }
+        String problem = replay.problem;
+        if (problem == null) {
+            ChangeCounterDao.Counts counts = readCounts();
+            if (counts.getSeq() != replay.last) {
+                problem = "it ends at transaction " + replay.last + ", the database at " + counts.getSeq();
+            } else if (counts.getExternal() != replay.external || counts.getPending() != 0) {
+                problem = "the tables were changed without journaling";
+            }
+        }
+        if (problem != null) {
+            System.out.println("Event journal not used (" + problem + "), scanning the tables");
+            return false;
+        }
+        AvailabilityIndex.getInstance().restore(replay.state.availability);
+        VaccineInventory.getInstance().restore(replay.state.doses);
+        CaregiverLoad.getInstance().restore(replay.state.load);
+        synchronized (this) {
+            replayed = replay.records;
+            replayMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+        return true;
+    }
+
+    // Applies the snapshot and then the events in sequence order; null if there is no journal.
+    private static Replay replay(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Replay replay = new Replay();
+        NavigableMap<Long, byte[]> events = new TreeMap<>();
+        byte[] shutdown = null;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer region = null;
+            int regionIndex = -1;
+            long position = HEADER_SIZE;
+            while (position < size) {
+                int index = (int) (position / REGION_SIZE);
+                if (index != regionIndex) {
+                    long regionStart = (long) index * REGION_SIZE;
+                    region = in.map(FileChannel.MapMode.READ_ONLY, regionStart,
+                            Math.min(REGION_SIZE, size - regionStart));
+                    regionIndex = index;
+                    if (index == 0 && (region.getInt(0) != MAGIC || region.getInt(4) != VERSION)) {
+                        return null;
+                    }
+                }
+                int offset = (int) (position % REGION_SIZE);
+                if (offset + 8 > region.limit()) {
+                    position = (long) (index + 1) * REGION_SIZE;
+                    continue;
+                }
+                int length = region.getInt(offset);
+                if (length == -1) {
+                    position = (long) (index + 1) * REGION_SIZE;
+                    continue;
+                }
+                if (length <= 0 || offset + 8 + length > region.limit()) {
+                    // end of the data, or a torn record
+                    break;
+                }
+                byte[] body = new byte[length];
+                region.get(offset + 8, body);
+                if (crc(body) != region.getInt(offset + 4)) {
+                    break;
+                }
+                position += 8 + length;
+                replay.records++;
+                byte type = body[0];
+                if (type == STALE) {
+                    replay.problem = "it was marked stale";
+                } else if (shutdown != null) {
+                    replay.problem = "it goes on after the shutdown record";
+                } else if (type == SHUTDOWN) {
+                    shutdown = body;
+                } else if (type < RESERVE) {
+                    // snapshot records all come before the first event
+                    apply(replay, body);
+                } else if (events.put(seq(body), body) != null) {
+                    replay.problem = "transaction " + seq(body) + " has two records";
+                }
+            }
+        }
+        if (replay.problem != null) {
+            return replay;
+        }
+        if (replay.last < 0) {
+            replay.problem = "it has no snapshot";
+            return replay;
+        }
+        for (byte[] body : events.values()) {
+            if (seq(body) != replay.last + 1) {
+                replay.problem = "the record of transaction " + (replay.last + 1) + " is missing";
+                return replay;
+            }
+            apply(replay, body);
+            replay.last++;
+        }
+        if (shutdown != null && !matchesTotals(replay.state, shutdown)) {
+            replay.problem = "the replayed state differs from the shutdown totals";
+        }
+        return replay;
+    }
+
+    private ChangeCounterDao.Counts readCounts() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            return changes.read(con);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // a caregiver whose appointments were all canceled may or may not keep an entry of 0
+    private static Map<String, Integer> withoutZeros(Map<String, Integer> counts) {
+        Map<String, Integer> result = new HashMap<>(counts);
+        result.values().removeIf(count -> count == 0);
+        return result;
+    }
+
+    /**
+     * Starts a new journal holding a snapshot of the current indexes, replacing the previous
+     * one, and starts the group-commit thread. The indexes must be loaded and nothing may change
+     * them until this returns.
+     */
+    public synchronized void open() throws IOException, SQLException {
+        try {
+            start();
+        } catch (IOException | SQLException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            channel = null;
+            regions.clear();
+            throw e;
+        }
+    }
+
+    private void start() throws IOException, SQLException {
+        // counts as a journaled transaction of its own, so whatever changed the tables since the
+        // last one is in External from here on
+        ChangeCounterDao.Counts counts = Transactions.run(con -> {
+            changes.begin(con);
+            return changes.read(con);
+        });
+        Path file = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        regions.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE));
+        regions.get(0).putInt(0, MAGIC).putInt(4, VERSION);
+        written = HEADER_SIZE;
+
+        long seq = counts.getSeq();
+        write(record(SNAPSHOT_SEQUENCE, seq, out -> out.writeLong(counts.getExternal())));
+        AvailabilityIndex.getInstance().forEach((date, caregiver) ->
+                write(record(SNAPSHOT_AVAILABILITY, seq, out -> {
+                    out.writeUTF(caregiver);
+                    out.writeLong(date.toEpochDay());
+                })));
+        for (Map.Entry<String, Integer> vaccine : VaccineInventory.getInstance().snapshot().entrySet()) {
+            write(record(SNAPSHOT_DOSES, seq, out -> {
+                out.writeUTF(vaccine.getKey());
+                out.writeInt(vaccine.getValue());
+            }));
+        }
+        for (Map.Entry<String, Integer> caregiver : CaregiverLoad.getInstance().snapshot().entrySet()) {
+            write(record(SNAPSHOT_LOAD, seq, out -> {
+                out.writeUTF(caregiver.getKey());
+                out.writeInt(caregiver.getValue());
+            }));
+        }
+        forceTo(written);
+        durable = written;
+        // the previous journal stays in place until the new one holds the same state
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        flusher = new Thread(this::flushLoop, "event-journal-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Called first in a transaction that changes the indexes; returns its sequence number, or 0
+     * if nothing is journaled. Every transaction that got a number must append exactly one
+     * record with it once it has committed, and call end() as its last statement.
+     */
+    public long begin(Connection con) throws SQLException {
+        if (!isOpen()) {
+            return 0;
+        }
+        return changes.begin(con);
+    }
+
+    public void end(Connection con, long seq) throws SQLException {
+        if (seq != 0) {
+            changes.end(con);
+        }
+    }
+
+    public CompletableFuture<Void> reserved(long seq, long appointmentId, String patient, String caregiver,
+                                            String vaccine, Date d) {
+        return append(seq, record(RESERVE, seq, out -> {
+            out.writeLong(appointmentId);
+            out.writeUTF(patient);
+            out.writeUTF(caregiver);
+            out.writeUTF(vaccine);
+            out.writeLong(d.toLocalDate().toEpochDay());
+        }));
+    }
+
+    public CompletableFuture<Void> canceled(long seq, long appointmentId, String caregiver, String vaccine,
+                                            Date d) {
+        return append(seq, record(CANCEL, seq, out -> {
+            out.writeLong(appointmentId);
+            out.writeUTF(caregiver);
+            out.writeUTF(vaccine);
+            out.writeLong(d.toLocalDate().toEpochDay());
+        }));
+    }
+
+    /**
+     * A change to a vaccine's dose count; a new vaccine is a change from zero.
+     */
+    public CompletableFuture<Void> dosesChanged(long seq, String vaccine, int delta) {
+        return append(seq, record(DOSES, seq, out -> {
+            out.writeUTF(vaccine);
+            out.writeInt(delta);
+        }));
+    }
+
+    /**
+     * Slots uploaded in one transaction; dates that were already there are replayed as no-ops.
+     */
+    public CompletableFuture<Void> availabilityAdded(long seq, String caregiver, List<Date> dates) {
+        return append(seq, record(AVAILABILITY, seq, out -> {
+            out.writeUTF(caregiver);
+            out.writeInt(dates.size());
+            for (Date d : dates) {
+                out.writeLong(d.toLocalDate().toEpochDay());
+            }
+        }));
+    }
+
+    /**
+     * A journaled transaction that changed the tables but not what the indexes hold.
+     */
+    public CompletableFuture<Void> unchanged(long seq) {
+        return append(seq, record(UNCHANGED, seq, out -> { }));
+    }
+
+    /**
+     * Marks the journal as no longer describing the indexes, e.g. after the availability index
+     * was repaired from the table. The next start scans the tables instead of replaying.
+     */
+    public CompletableFuture<Void> markStale() {
+        return append(record(STALE, 0, out -> { }));
+    }
+
+    /**
+     * Completes once every record appended so far is durable. A batch calls it before it
+     * commits, since records appended inside its shared transaction do not wait (see append).
+     */
+    public CompletableFuture<Void> sync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (channel == null || closed || durable == written) {
+                future.complete(null);
+                return future;
+            }
+            pending.add(new Pending(written, future));
+            notifyAll();
+        }
+        return future;
+    }
+
+    /**
+     * Waits until a record is on disk, so that a command reports success only once a crash can
+     * no longer cost its record. Without this a crash would lose nothing from the database, but
+     * the next start would find the gap and scan the tables.
+     */
+    public static void await(CompletableFuture<Void> record) {
+        try {
+            record.join();
+        } catch (CompletionException e) {
+            // the record is lost, not the transaction; the next start scans the tables
+            System.out.println("Could not write event journal: " + e.getCause());
+        }
+    }
+
+    /**
+     * Ends the journal with the clean-shutdown marker and forces it to disk. Call once nothing
+     * changes the indexes any more.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (channel == null || closed) {
+                return;
+            }
+            write(shutdownRecord());
+            closed = true;
+            notifyAll();
+            thread = flusher;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            synchronized (this) {
+                channel.close();
+                if (lockChannel != null) {
+                    lockChannel.close();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not close event journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One line for the stats report.
+     */
+    public synchronized String describe() {
+        if (channel == null) {
+            return "";
+        }
+        return String.format("Journal: %d events, %.1f MB, %d fsyncs (%.1f events per fsync), "
+                        + "%d records replayed at startup in %d ms%n",
+                events, written / (1024.0 * 1024), fsyncs, fsyncs == 0 ? 0.0 : (double) events / fsyncs,
+                replayed, replayMillis);
+    }
+
+    private synchronized boolean isOpen() {
+        return channel != null && !closed;
+    }
+
+    private CompletableFuture<Void> append(long seq, byte[] body) {
+        if (seq == 0) {
+            // the transaction did not go through begin(), so its change cannot be replayed
+            return markStale();
+        }
+        return append(body);
+    }
+
+    private CompletableFuture<Void> append(byte[] body) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (channel == null || closed) {
+                // not journaling (disabled, locked by another process, or shut down)
+                future.complete(null);
+                return future;
+            }
+            write(body);
+            events++;
+            if (SharedTransaction.current() != null) {
+                // a batch, which waits for all of its records at once before it commits
+                future.complete(null);
+            } else {
+                pending.add(new Pending(written, future));
+            }
+            notifyAll();
+        }
+        return future;
+    }
+
+    // Copies the record into the mapped file; the caller holds the lock.
+    private void write(byte[] body) {
+        int size = 8 + body.length;
+        int offset = (int) (written % REGION_SIZE);
+        try {
+            if (offset + size > REGION_SIZE) {
+                if (REGION_SIZE - offset >= 4) {
+                    regions.get(regions.size() - 1).putInt(offset, -1);
+                }
+                written = (written / REGION_SIZE + 1) * REGION_SIZE;
+                offset = 0;
+            }
+            int index = (int) (written / REGION_SIZE);
+            while (regions.size() <= index) {
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) regions.size() * REGION_SIZE,
+                        REGION_SIZE));
+            }
+            MappedByteBuffer region = regions.get(index);
+            region.put(offset + 8, body);
+            region.putInt(offset + 4, crc(body));
+            region.putInt(offset, body.length);
+            written += size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            synchronized (this) {
+                while (!closed && written == durable) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed && written == durable) {
+                    return;
+                }
+            }
+            if (!isClosed()) {
+                // let more events join this group
+                try {
+                    Thread.sleep(GROUP_COMMIT_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            synchronized (this) {
+                target = written;
+            }
+            try {
+                forceTo(target);
+            } catch (UncheckedIOException e) {
+                // whatever was not synced may be lost, which the next start notices as a gap
+                System.out.println("Could not sync event journal, running without it: " + e.getCause().getMessage());
+                synchronized (this) {
+                    closed = true;
+                    while (!pending.isEmpty()) {
+                        pending.poll().future.completeExceptionally(e);
+                    }
+                }
+                return;
+            }
+            synchronized (this) {
+                durable = target;
+                fsyncs++;
+                while (!pending.isEmpty() && pending.peek().position <= target) {
+                    pending.poll().future.complete(null);
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // Forces every region holding bytes between the durable position and target.
+    private void forceTo(long target) {
+        List<MappedByteBuffer> dirty;
+        long from;
+        synchronized (this) {
+            from = durable;
+            dirty = new ArrayList<>(regions);
+        }
+        for (int index = (int) (from / REGION_SIZE); index < dirty.size() && (long) index * REGION_SIZE < target;
+             index++) {
+            long regionStart = (long) index * REGION_SIZE;
+            int start = (int) Math.max(0, from - regionStart);
+            int end = (int) Math.min(REGION_SIZE, target - regionStart);
+            if (end > start) {
+                dirty.get(index).force(start, end - start);
+            }
+        }
+    }
+
+    private static void apply(Replay replay, byte[] body) throws IOException {
+        JournalState state = replay.state;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        in.readLong();
+        long seq = in.readLong();
+        switch (type) {
+            case SNAPSHOT_SEQUENCE:
+                replay.last = seq;
+                replay.external = in.readLong();
+                break;
+            case SNAPSHOT_AVAILABILITY: {
+                String caregiver = in.readUTF();
+                state.addAvailability(LocalDate.ofEpochDay(in.readLong()), caregiver);
+                break;
+            }
+            case AVAILABILITY: {
+                String caregiver = in.readUTF();
+                for (int i = in.readInt(); i > 0; i--) {
+                    state.addAvailability(LocalDate.ofEpochDay(in.readLong()), caregiver);
+                }
+                break;
+            }
+            case SNAPSHOT_DOSES:
+                state.doses.put(in.readUTF(), in.readInt());
+                break;
+            case SNAPSHOT_LOAD:
+                state.load.put(in.readUTF(), in.readInt());
+                break;
+            case RESERVE: {
+                in.readLong();
+                in.readUTF();
+                String caregiver = in.readUTF();
+                String vaccine = in.readUTF();
+                state.reserved(caregiver, vaccine, LocalDate.ofEpochDay(in.readLong()));
+                break;
+            }
+            case CANCEL: {
+                in.readLong();
+                String caregiver = in.readUTF();
+                String vaccine = in.readUTF();
+                state.canceled(caregiver, vaccine, LocalDate.ofEpochDay(in.readLong()));
+                break;
+            }
+            case DOSES:
+                state.addDoses(in.readUTF(), in.readInt());
+                break;
+            case UNCHANGED:
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private interface Fields {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] record(byte type, long seq, Fields fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(type);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(seq);
+            fields.write(out);
+        } catch (IOException e) {
+            // cannot happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // after the type byte and the time
+    private static long seq(byte[] body) {
+        long seq = 0;
+        for (int i = 9; i < 17; i++) {
+            seq = (seq << 8) | (body[i] & 0xff);
+        }
+        return seq;
+    }
+
+    // The totals of the indexes at shutdown: doses, load, and the number and digest of the slots.
+    private static byte[] shutdownRecord() {
+        Map<String, Integer> doses = VaccineInventory.getInstance().snapshot();
+        Map<String, Integer> load = withoutZeros(CaregiverLoad.getInstance().snapshot());
+        long[] slots = new long[2];
+        AvailabilityIndex.getInstance().forEach((date, caregiver) -> {
+            slots[0]++;
+            slots[1] += slotHash(date, caregiver);
+        });
+        return record(SHUTDOWN, 0, out -> {
+            writeCounts(out, doses);
+            writeCounts(out, load);
+            out.writeLong(slots[0]);
+            out.writeLong(slots[1]);
+        });
+    }
+
+    private static boolean matchesTotals(JournalState state, byte[] shutdown) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(shutdown));
+        in.readByte();
+        in.readLong();
+        in.readLong();
+        Map<String, Integer> doses = readCounts(in);
+        Map<String, Integer> load = readCounts(in);
+        long count = in.readLong();
+        long digest = in.readLong();
+        long slots = 0;
+        long hash = 0;
+        for (Map.Entry<LocalDate, ? extends Collection<String>> date : state.availability.entrySet()) {
+            for (String caregiver : date.getValue()) {
+                slots++;
+                hash += slotHash(date.getKey(), caregiver);
+            }
+        }
+        return doses.equals(state.doses) && load.equals(withoutZeros(state.load)) && count == slots
+                && digest == hash;
+    }
+
+    private static void writeCounts(DataOutputStream out, Map<String, Integer> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private static Map<String, Integer> readCounts(DataInputStream in) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            counts.put(in.readUTF(), in.readInt());
+        }
+        return counts;
+    }
+
+    // Summed over all slots, so the digest does not depend on the order they are visited in.
+    private static long slotHash(LocalDate date, String caregiver) {
+        long h = date.toEpochDay() * 0x9E3779B97F4A7C15L + caregiver.hashCode();
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    private static int crc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static final class Replay {
+        private final JournalState state = new JournalState();
+        private long records = 0;
+        // the sequence number of the snapshot, then of the last event applied; -1 before the snapshot
+        private long last = -1;
+        // ChangeCounter.External when the snapshot was taken
+        private long external = 0;
+        // why the journal cannot be trusted, or null
+        private String problem = null;
+    }
+
+    private static final class Pending {
+        private final long position;
+        private final CompletableFuture<Void> future;
+
+        Pending(long position, CompletableFuture<Void> future) {
+            this.position = position;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package scheduler.journal;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What the in-memory indexes hold, rebuilt by applying journal records in order: free
+ * caregivers per date, doses per vaccine and appointments per caregiver.
+ */
+final class JournalState {
+
+    final NavigableMap<LocalDate, NavigableSet<String>> availability = new TreeMap<>();
+    final Map<String, Integer> doses = new HashMap<>();
+    final Map<String, Integer> load = new HashMap<>();
+
+    void addAvailability(LocalDate date, String caregiver) {
+        availability.computeIfAbsent(date, k -> new TreeSet<>()).add(caregiver);
+    }
+
+    void reserved(String caregiver, String vaccine, LocalDate date) {
+        NavigableSet<String> free = availability.get(date);
+        if (free != null && free.remove(caregiver) && free.isEmpty()) {
+            availability.remove(date);
+        }
+        doses.merge(vaccine, -1, Integer::sum);
+        load.merge(caregiver, 1, Integer::sum);
+    }
+
+    void canceled(String caregiver, String vaccine, LocalDate date) {
+        addAvailability(date, caregiver);
+        doses.merge(vaccine, 1, Integer::sum);
+        load.merge(caregiver, -1, Integer::sum);
+    }
+
+    void addDoses(String vaccine, int delta) {
+        doses.merge(vaccine, delta, Integer::sum);
+    }
+}
@@ -0,0 +1,278 @@
+package scheduler.metrics;
+
+import scheduler.cache.ScheduleCache;
+import scheduler.cache.UsernameFilter;
+import scheduler.dao.StorageBackend;
+import scheduler.db.ConnectionManager;
+import scheduler.db.ConnectionPool;
+import scheduler.db.ReadRouter;
+import scheduler.db.WritePipeline;
+import scheduler.journal.EventJournal;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide performance counters: latency per command, per SQL statement, for borrowing a
+ * pooled connection and for password hashing, plus rows read per statement.
+ *
+ * Everything is recorded into lock-free histograms, so instrumentation stays on permanently.
+ * The numbers are available through the stats command, the "scheduler:type=Metrics" MBean and
+ * optional periodic snapshots appended to a file.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final Metrics instance = new Metrics();
+
+    // statements beyond this many distinct SQL texts are lumped together
+    private static final int MAX_STATEMENTS = 200;
+    private static final String OTHER_STATEMENTS = "(other statements)";
+    // statements listed by the stats command, by total time spent
+    private static final int REPORT_STATEMENTS = 15;
+
+    private final Map<String, Histogram> commands = new ConcurrentHashMap<>();
+    private final Map<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+    private final Histogram connectionAcquire = new Histogram();
+    private final Histogram hashing = new Histogram();
+    private ScheduledExecutorService snapshotter = null;
+
+    private Metrics() {
+    }
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    public void recordCommand(String command, long nanos) {
+        Histogram histogram = commands.get(command);
+        if (histogram == null) {
+            histogram = commands.computeIfAbsent(command, k -> new Histogram());
+        }
+        histogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordConnectionAcquire(long nanos) {
+        connectionAcquire.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordHash(long nanos) {
+        hashing.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Counters for one SQL text. Callers keep the returned object for the life of the statement.
+     */
+    public StatementMetrics statement(String sql) {
+        StatementMetrics metrics = statements.get(sql);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (statements.size() >= MAX_STATEMENTS) {
+            return statements.computeIfAbsent(OTHER_STATEMENTS, k -> new StatementMetrics());
+        }
+        return statements.computeIfAbsent(sql, k -> new StatementMetrics());
+    }
+
+    public Histogram getConnectionAcquire() {
+        return connectionAcquire;
+    }
+
+    public Histogram getHashing() {
+        return hashing;
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-28s %8s %9s %9s %9s %9s%n",
+                "Command", "count", "mean ms", "p50 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, Histogram> command : new TreeMap<>(commands).entrySet()) {
+            appendRow(report, command.getKey(), command.getValue());
+        }
+
+        report.append(String.format("%n%-28s %8s %9s %9s %9s %9s%n",
+                "Resource", "count", "mean ms", "p50 ms", "p99 ms", "max ms"));
+        appendRow(report, "connection acquire", connectionAcquire);
+        appendRow(report, "password hash", hashing);
+        // only what is already running; reporting must not start pools or threads
+        ConnectionPool pool = ConnectionManager.getExistingPool();
+        if (pool != null) {
+            report.append("Pool: ").append(pool.getActiveCount()).append(" active, ")
+                    .append(pool.getIdleCount()).append(" idle of ").append(pool.getMaxSize())
+                    .append(", ").append(pool.getBorrowTimeouts()).append(" timeouts, ")
+                    .append(pool.getConnectionsOpened()).append(" opened\n");
+        }
+        String settings = StorageBackend.getInstance().describeSettings();
+        if (settings != null) {
+            report.append(settings);
+        }
+        ReadRouter router = ConnectionManager.getExistingReadRouter();
+        if (router != null) {
+            report.append(router.describe());
+        }
+        WritePipeline pipeline = ConnectionManager.getExistingWritePipeline();
+        if (pipeline != null) {
+            report.append(pipeline.describe());
+        }
+        report.append(UsernameFilter.patients().describe());
+        report.append(UsernameFilter.caregivers().describe());
+        report.append(ScheduleCache.getInstance().describe());
+        report.append(EventJournal.getInstance().describe());
+
+        List<Map.Entry<String, StatementMetrics>> byTime = new ArrayList<>(statements.entrySet());
+        byTime.sort((a, b) -> Long.compare(b.getValue().latency.getTotal(), a.getValue().latency.getTotal()));
+        report.append(String.format("%nSQL by total time (top %d of %d)%n", Math.min(REPORT_STATEMENTS, byTime.size()),
+                byTime.size()));
+        report.append(String.format("%8s %9s %9s %9s %9s  %s%n",
+                "count", "total ms", "mean ms", "p99 ms", "rows", "statement"));
+        for (Map.Entry<String, StatementMetrics> entry : byTime.subList(0, Math.min(REPORT_STATEMENTS, byTime.size()))) {
+            Histogram h = entry.getValue().latency;
+            report.append(String.format("%8d %9.1f %9.3f %9.3f %9d  %s%n",
+                    h.getCount(), h.getTotal() / 1000.0, h.getMean() / 1000, h.percentile(0.99) / 1000.0,
+                    entry.getValue().rows.sum(), abbreviate(entry.getKey())));
+        }
+        return report.toString();
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        commands.forEach((name, h) -> counts.put(name, h.getCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getCommandP99Micros() {
+        Map<String, Long> p99 = new TreeMap<>();
+        commands.forEach((name, h) -> p99.put(name, h.percentile(0.99)));
+        return p99;
+    }
+
+    @Override
+    public long getConnectionAcquireP99Micros() {
+        return connectionAcquire.percentile(0.99);
+    }
+
+    @Override
+    public long getHashP99Micros() {
+        return hashing.percentile(0.99);
+    }
+
+    @Override
+    public int getActiveConnections() {
+        ConnectionPool pool = ConnectionManager.getExistingPool();
+        return pool == null ? 0 : pool.getActiveCount();
+    }
+
+    @Override
+    public double getScheduleCacheHitRatio() {
+        return ScheduleCache.getInstance().getHitRatio();
+    }
+
+    @Override
+    public Map<String, Double> getUsernameFalsePositiveRates() {
+        Map<String, Double> rates = new TreeMap<>();
+        rates.put("patients", UsernameFilter.patients().getFalsePositiveRate());
+        rates.put("caregivers", UsernameFilter.caregivers().getFalsePositiveRate());
+        return rates;
+    }
+
+    /**
+     * Exposes these metrics through the platform MBean server. Safe to call more than once.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("scheduler:type=Metrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.out.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a timestamped report to the file every intervalSeconds.
+     */
+    public synchronized void startSnapshots(Path file, long intervalSeconds) {
+        if (snapshotter != null || intervalSeconds <= 0) {
+            return;
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> writeSnapshot(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopSnapshots() {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            snapshotter = null;
+        }
+    }
+
+    public void writeSnapshot(Path file) {
+        String snapshot = "=== " + LocalDateTime.now() + " ===\n" + getReport() + "\n";
+        try {
+            Files.writeString(file, snapshot, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("Could not write metrics snapshot: " + e.getMessage());
+        }
+    }
+
+    private static void appendRow(StringBuilder report, String name, Histogram h) {
+        report.append(String.format("%-28s %8d %9.3f %9.3f %9.3f %9.3f%n", name, h.getCount(),
+                h.getMean() / 1000, h.percentile(0.50) / 1000.0, h.percentile(0.99) / 1000.0, h.getMax() / 1000.0));
+    }
+
+    // one line, at most 100 characters
+    private static String abbreviate(String sql) {
+        String line = sql.replaceAll("\\s+", " ").trim();
+        return line.length() <= 100 ? line : line.substring(0, 97) + "...";
+    }
+
+    /**
+     * Execution latency and rows read for one SQL text.
+     */
+    public static class StatementMetrics {
+        private final Histogram latency = new Histogram();
+        private final LongAdder rows = new LongAdder();
+
+        public void recordExecution(long nanos) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+
+        public void recordRow() {
+            rows.increment();
+        }
+
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+    }
+}
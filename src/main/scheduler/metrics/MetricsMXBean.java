@@ -0,0 +1,36 @@
+package scheduler.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link Metrics}, registered as "scheduler:type=Metrics". Latencies
+ * are in microseconds.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * The same text the stats command prints.
+     */
+    String getReport();
+
+    Map<String, Long> getCommandCounts();
+
+    Map<String, Long> getCommandP99Micros();
+
+    long getConnectionAcquireP99Micros();
+
+    long getHashP99Micros();
+
+    int getActiveConnections();
+
+    /**
+     * Share of checks for absent usernames that the username filters could not rule out, by
+     * account type.
+     */
+    Map<String, Double> getUsernameFalsePositiveRates();
+
+    /**
+     * Share of schedule search lookups answered from the schedule cache.
+     */
+    double getScheduleCacheHitRatio();
+}
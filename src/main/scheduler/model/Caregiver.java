@@ -1,10 +1,21 @@
 package scheduler.model;
 
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.ScheduleCache;
+import scheduler.cache.UsernameFilter;
+import scheduler.dao.StorageBackend;
 import scheduler.db.ConnectionManager;
+import scheduler.db.Transactions;
+import scheduler.db.WritePipeline;
+import scheduler.journal.EventJournal;
 import scheduler.util.Util;
 
-import java.sql.*;
-import java.util.Arrays;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Caregiver {
     private final String username;
@@ -37,38 +48,63 @@ public class Caregiver {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+        WritePipeline.await(saveToDBAsync());
+    }
+
+    /**
+     * Queues the insert for the next group commit; the future completes once it has committed.
+     */
+    public CompletableFuture<Void> saveToDBAsync() {
+        UsernameFilter.caregivers().add(this.username);
+        return ConnectionManager.getWritePipeline().submit(con -> {
+            StorageBackend.getInstance().caregivers().insert(con, this.username, this.salt, this.hash);
+            return null;
+        });
     }
 
     public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
+        WritePipeline.await(uploadAvailabilityAsync(d));
+    }
+
+    /**
+     * Queues the insert for the next group commit; the future completes once it has committed,
+     * the availability index shows the date and the journal record is durable.
+     */
+    public CompletableFuture<Void> uploadAvailabilityAsync(Date d) {
+        EventJournal journal = EventJournal.getInstance();
+        return ConnectionManager.getWritePipeline().submit(con -> {
+            long seq = journal.begin(con);
+            StorageBackend.getInstance().availabilities().insert(con, d, this.username);
+            journal.end(con, seq);
+            return seq;
+        }).thenCompose(seq -> {
+            AvailabilityIndex.getInstance().add(d, this.username);
+            ScheduleCache.getInstance().invalidate(d.toLocalDate());
+            return journal.availabilityAdded(seq, this.username, List.of(d));
+        });
+    }
+
+    /**
+     * Adds availability for all given dates as one batch in a single transaction. Dates that are
+     * already uploaded are skipped. Returns the number of dates that were newly added.
+     */
+    public int uploadAvailability(List<Date> dates) throws SQLException {
+        EventJournal journal = EventJournal.getInstance();
+        AtomicLong seq = new AtomicLong();
+        int inserted = Transactions.run(con -> {
+            seq.set(journal.begin(con));
+            int count = StorageBackend.getInstance().availabilities().insertAll(con, dates, this.username);
+            journal.end(con, seq.get());
+            return count;
+        });
+        // adding a date that was already there is a no-op for the index
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        for (Date d : dates) {
+            index.add(d, this.username);
+            ScheduleCache.getInstance().invalidate(d.toLocalDate());
         }
+        EventJournal.await(journal.availabilityAdded(seq.get(), this.username, dates));
+        return inserted;
     }
 
     public static class CaregiverBuilder {
@@ -102,33 +138,29 @@ public class Caregiver {
             ConnectionManager cm = new ConnectionManager();
             Connection con = cm.createConnection();
 
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
+            byte[] salt;
+            byte[] storedHash;
             try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        cm.closeConnection();
-                        return new Caregiver(this);
-                    }
+                byte[][] credentials = StorageBackend.getInstance().caregivers().findCredentials(con, this.username);
+                if (credentials == null) {
+                    return null;
                 }
-                return null;
+                salt = credentials[0];
+                storedHash = credentials[1];
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
                 cm.closeConnection();
             }
+
+            // check if the password matches; the connection is already back in the pool while
+            // the hash is computed on the shared hashing pool
+            if (!Util.verifyPasswordAsync(password, salt, storedHash).join()) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = storedHash;
+            return new Caregiver(this);
         }
     }
 }
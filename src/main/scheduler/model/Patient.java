@@ -1,11 +1,15 @@
 package scheduler.model;
 
 
+import scheduler.cache.UsernameFilter;
+import scheduler.dao.StorageBackend;
 import scheduler.db.ConnectionManager;
+import scheduler.db.WritePipeline;
 import scheduler.util.Util;
 
-import java.sql.*;
-import java.util.Arrays;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public class Patient {
     private final String username;
@@ -39,22 +43,19 @@ public class Patient {
     }
 
 
-    public void saveToDB() throws SQLException{
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addPatient = "INSERT INTO Patient VALUES (?, ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
-        }catch (SQLException e) {
-            throw new SQLException();
-        } finally {
-            cm.closeConnection();
-        }
+    public void saveToDB() throws SQLException {
+        WritePipeline.await(saveToDBAsync());
+    }
+
+    /**
+     * Queues the insert for the next group commit; the future completes once it has committed.
+     */
+    public CompletableFuture<Void> saveToDBAsync() {
+        UsernameFilter.patients().add(this.username);
+        return ConnectionManager.getWritePipeline().submit(con -> {
+            StorageBackend.getInstance().patients().insert(con, this.username, this.salt, this.hash);
+            return null;
+        });
     }
 
 
@@ -91,33 +92,29 @@ public class Patient {
             ConnectionManager cm = new ConnectionManager();
             Connection con = cm.createConnection();
 
-            String getPatient = "SELECT Salt, Hash FROM Patient WHERE Username = ?";
+            byte[] salt;
+            byte[] storedHash;
             try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        cm.closeConnection();
-                        return new Patient(this);
-                    }
+                byte[][] credentials = StorageBackend.getInstance().patients().findCredentials(con, this.username);
+                if (credentials == null) {
+                    return null;
                 }
-                return null;
+                salt = credentials[0];
+                storedHash = credentials[1];
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
                 cm.closeConnection();
             }
+
+            // check if the password matches; the connection is already back in the pool while
+            // the hash is computed on the shared hashing pool
+            if (!Util.verifyPasswordAsync(password, salt, storedHash).join()) {
+                return null;
+            }
+            this.salt = salt;
+            this.hash = storedHash;
+            return new Patient(this);
         }
     }
 
@@ -1,11 +1,16 @@
 package scheduler.model;
 
+import scheduler.cache.ScheduleCache;
+import scheduler.cache.VaccineInventory;
+import scheduler.dao.StorageBackend;
 import scheduler.db.ConnectionManager;
+import scheduler.db.Transactions;
+import scheduler.db.WritePipeline;
+import scheduler.journal.EventJournal;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
 public class Vaccine {
     private final String vaccineName;
@@ -31,64 +36,129 @@ public class Vaccine {
     }
 
     public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addDoses = "INSERT INTO vaccines VALUES (?, ?)";
+        EventJournal journal = EventJournal.getInstance();
+        long seq;
         try {
-            PreparedStatement statement = con.prepareStatement(addDoses);
-            statement.setString(1, this.vaccineName);
-            statement.setInt(2, this.availableDoses);
-            statement.executeUpdate();
+            seq = Transactions.run(con -> {
+                long journaled = journal.begin(con);
+                StorageBackend.getInstance().vaccines().insert(con, this.vaccineName, this.availableDoses);
+                journal.end(con, journaled);
+                return journaled;
+            });
         } catch (SQLException e) {
             throw new SQLException();
-        } finally {
-            cm.closeConnection();
         }
+        VaccineInventory.getInstance().create(this.vaccineName, this.availableDoses);
+        ScheduleCache.getInstance().invalidateVaccines();
+        EventJournal.await(journal.dosesChanged(seq, this.vaccineName, this.availableDoses));
     }
 
     // Increment the available doses
     public void increaseAvailableDoses(int num) throws SQLException {
+        WritePipeline.await(increaseAvailableDosesAsync(num));
+    }
+
+    /**
+     * Queues the increase for the next group commit; the future completes once it has committed
+     * and the inventory shows the new count.
+     */
+    public CompletableFuture<Void> increaseAvailableDosesAsync(int num) {
         if (num <= 0) {
             throw new IllegalArgumentException("Argument cannot be negative!");
         }
+
+        VaccineInventory inventory = VaccineInventory.getInstance();
+        EventJournal journal = EventJournal.getInstance();
+        if (inventory.isLoaded()) {
+            // the ledger row is the durable record; the count is folded into Vaccines later
+            return ConnectionManager.getWritePipeline().submit(con -> {
+                long seq = journal.begin(con);
+                inventory.recordDelta(con, this.vaccineName, num);
+                journal.end(con, seq);
+                return seq;
+            }).thenCompose(seq -> {
+                inventory.release(this.vaccineName, num);
+                return dosesIncreased(seq, num);
+            });
+        }
+
+        // relative update so concurrent changes to the same vaccine are not overwritten
+        return ConnectionManager.getWritePipeline().submit(con -> {
+            long seq = journal.begin(con);
+            StorageBackend.getInstance().vaccines().addDoses(con, this.vaccineName, num);
+            journal.end(con, seq);
+            return seq;
+        }).thenCompose(seq -> dosesIncreased(seq, num));
+    }
+
+    // completes once the journal record is durable
+    private CompletableFuture<Void> dosesIncreased(long seq, int num) {
+        ScheduleCache.getInstance().invalidateVaccines();
         this.availableDoses += num;
+        return EventJournal.getInstance().dosesChanged(seq, this.vaccineName, num);
+    }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    // Decrement the available doses
+    public void decreaseAvailableDoses(int num) throws SQLException {
+        if (num <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
 
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
+        VaccineInventory inventory = VaccineInventory.getInstance();
+        if (inventory.isLoaded()) {
+            if (!inventory.tryReserve(this.vaccineName, num)) {
+                throw new IllegalArgumentException("Not enough available doses!");
+            }
+            long seq;
+            try {
+                seq = appendToLedger(-num);
+            } catch (SQLException e) {
+                inventory.release(this.vaccineName, num);
+                ScheduleCache.getInstance().invalidateVaccines();
+                throw e;
+            }
+            ScheduleCache.getInstance().invalidateVaccines();
+            this.availableDoses -= num;
+            EventJournal.await(EventJournal.getInstance().dosesChanged(seq, this.vaccineName, -num));
+            return;
+        }
+
+        // only succeeds if the stored count still covers num, whatever this object last saw;
+        // the journal sequence number, or -1 if it did not
+        EventJournal journal = EventJournal.getInstance();
+        long seq;
         try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
+            seq = Transactions.run(con -> {
+                long journaled = journal.begin(con);
+                if (!StorageBackend.getInstance().vaccines().takeDoses(con, this.vaccineName, num)) {
+                    return Transactions.abort(con, -1L);
+                }
+                journal.end(con, journaled);
+                return journaled;
+            });
         } catch (SQLException e) {
             throw new SQLException();
-        } finally {
-            cm.closeConnection();
         }
-    }
-
-    // Decrement the available doses
-    public void decreaseAvailableDoses(int num) throws SQLException {
-        if (this.availableDoses - num < 0) {
+        if (seq < 0) {
             throw new IllegalArgumentException("Not enough available doses!");
         }
+        ScheduleCache.getInstance().invalidateVaccines();
         this.availableDoses -= num;
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+        EventJournal.await(journal.dosesChanged(seq, this.vaccineName, -num));
+    }
 
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
+    // Returns the journal sequence number of the transaction.
+    private long appendToLedger(int delta) throws SQLException {
+        EventJournal journal = EventJournal.getInstance();
         try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
-            statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
+            return Transactions.run(con -> {
+                long seq = journal.begin(con);
+                VaccineInventory.getInstance().recordDelta(con, this.vaccineName, delta);
+                journal.end(con, seq);
+                return seq;
+            });
         } catch (SQLException e) {
             throw new SQLException();
-        } finally {
-            cm.closeConnection();
         }
     }
 
@@ -123,20 +193,26 @@ public class Vaccine {
         }
 
         public Vaccine get() throws SQLException {
+            VaccineInventory inventory = VaccineInventory.getInstance();
+            if (inventory.isLoaded()) {
+                Integer doses = inventory.get(this.vaccineName);
+                if (doses == null) {
+                    return null;
+                }
+                this.availableDoses = doses;
+                return new Vaccine(this);
+            }
+
             ConnectionManager cm = new ConnectionManager();
             Connection con = cm.createConnection();
 
-            String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
             try {
-                PreparedStatement statement = con.prepareStatement(getVaccine);
-                statement.setString(1, this.vaccineName);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    this.availableDoses = resultSet.getInt("Doses");
-                    cm.closeConnection();
-                    return new Vaccine(this);
+                Integer doses = StorageBackend.getInstance().vaccines().findDoses(con, this.vaccineName);
+                if (doses == null) {
+                    return null;
                 }
-                return null;
+                this.availableDoses = doses;
+                return new Vaccine(this);
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
@@ -0,0 +1,38 @@
+package scheduler.service;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * Decides which free caregiver a reservation gets. reserve tries the caregivers in the order
+ * returned and books the first one whose slot is still there.
+ */
+public interface AssignmentStrategy {
+
+    /**
+     * Orders the caregivers free on the date, given in username order. Implementations are
+     * called concurrently and must not modify free.
+     */
+    List<String> order(Date d, NavigableSet<String> free);
+
+    /**
+     * The strategy with the given name: least-loaded (the default, also used for null or
+     * empty), round-robin, random or alphabetical.
+     */
+    static AssignmentStrategy forName(String name) {
+        if (name == null || name.isEmpty() || name.equals("least-loaded")) {
+            return new LeastLoadedAssignment();
+        }
+        switch (name) {
+            case "round-robin":
+                return new RoundRobinAssignment();
+            case "random":
+                return new RandomAssignment();
+            case "alphabetical":
+                return (d, free) -> List.copyOf(free);
+            default:
+                throw new IllegalArgumentException("Unknown assignment strategy: " + name);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package scheduler.service;
+
+import scheduler.cache.UsernameFilter;
+import scheduler.dao.AccountDao;
+import scheduler.dao.StorageBackend;
+import scheduler.db.ConnectionManager;
+import scheduler.db.Transactions;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Creates patient or caregiver accounts in bulk from a CSV file of "username,password" lines.
+ *
+ * The file is streamed in chunks. For each chunk, rows with a weak password or a username seen
+ * earlier in the file are dropped, usernames that already exist are found with one IN query
+ * (leaving out those the username filter rules out), salts and hashes are computed in parallel
+ * across cores, and the accounts are inserted as one JDBC batch in a single transaction.
+ */
+public class BulkImporter {
+
+    // kept well under SQLite's limit on bound parameters per statement
+    private static final int CHUNK_SIZE = 500;
+
+    public enum Role {
+        PATIENT,
+        CAREGIVER;
+
+        private AccountDao accounts() {
+            StorageBackend backend = StorageBackend.getInstance();
+            return this == PATIENT ? backend.patients() : backend.caregivers();
+        }
+
+        private UsernameFilter usernames() {
+            return this == PATIENT ? UsernameFilter.patients() : UsernameFilter.caregivers();
+        }
+    }
+
+    private final Role role;
+    private final PrintStream out;
+
+    // counters for the final report
+    private long rowsRead = 0;
+    private long created = 0;
+    private long alreadyExisting = 0;
+    private long duplicateInFile = 0;
+    private long invalid = 0;
+
+    public BulkImporter(Role role, PrintStream out) {
+        this.role = role;
+        this.out = out;
+    }
+
+    public void importFile(Path file) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Set<String> seen = new HashSet<>();
+        List<String[]> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    if (line.equalsIgnoreCase("username,password")) {
+                        continue;
+                    }
+                }
+                rowsRead++;
+                String[] row = parse(line);
+                if (row == null) {
+                    invalid++;
+                    continue;
+                }
+                if (!seen.add(row[0])) {
+                    duplicateInFile++;
+                    continue;
+                }
+                chunk.add(row);
+                if (chunk.size() == CHUNK_SIZE) {
+                    importChunk(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.println("Imported " + created + " " + role.name().toLowerCase() + " accounts from " + rowsRead + " rows"
+                + " in " + String.format("%.2f", seconds) + " s"
+                + " (" + String.format("%.0f", seconds > 0 ? created / seconds : 0) + " accounts/s)");
+        out.println("Skipped: " + alreadyExisting + " already existing, " + duplicateInFile
+                + " duplicated in file, " + invalid + " invalid or weak password");
+        out.println("Password hashing: " + Util.getHashCount() + " hashes, avg "
+                + String.format("%.1f", Util.getAverageHashMicros()) + " us, max "
+                + String.format("%.1f", Util.getMaxHashMicros()) + " us");
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    // username,password -> {username, password}; null if malformed or the password is weak
+    private static String[] parse(String line) {
+        int comma = line.indexOf(',');
+        if (comma <= 0 || comma != line.lastIndexOf(',')) {
+            return null;
+        }
+        String username = line.substring(0, comma).trim();
+        String password = line.substring(comma + 1).trim();
+        if (username.isEmpty() || username.contains(" ") || !Util.isStrongPassword(password)) {
+            return null;
+        }
+        return new String[]{username, password};
+    }
+
+    private void importChunk(List<String[]> rows) throws SQLException {
+        Set<String> existing = existingUsernames(rows);
+        List<String[]> fresh = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            if (existing.contains(row[0])) {
+                alreadyExisting++;
+            } else {
+                fresh.add(row);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        // PBKDF2 dominates the cost of an import, so spread it over the hashing pool's cores
+        List<CompletableFuture<byte[][]>> pending = new ArrayList<>(fresh.size());
+        for (String[] row : fresh) {
+            pending.add(Util.generateCredentialsAsync(row[1]));
+        }
+        List<byte[][]> credentials = new ArrayList<>(fresh.size());
+        for (CompletableFuture<byte[][]> future : pending) {
+            credentials.add(future.join());
+        }
+
+        List<String> usernames = new ArrayList<>(fresh.size());
+        for (String[] row : fresh) {
+            usernames.add(row[0]);
+            role.usernames().add(row[0]);
+        }
+        int inserted = Transactions.run(con -> role.accounts().insertAll(con, usernames, credentials));
+        created += inserted;
+        // rows that lost a race with a concurrent create_* count as existing
+        alreadyExisting += fresh.size() - inserted;
+    }
+
+    // one set-based lookup for the whole chunk instead of a query per username, limited to the
+    // usernames the filter cannot rule out
+    private Set<String> existingUsernames(List<String[]> rows) throws SQLException {
+        List<String> usernames = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            if (role.usernames().mightContain(row[0])) {
+                usernames.add(row[0]);
+            }
+        }
+        if (usernames.isEmpty()) {
+            return Set.of();
+        }
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        try {
+            return role.accounts().findExisting(con, usernames);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
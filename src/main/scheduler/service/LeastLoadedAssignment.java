@@ -0,0 +1,37 @@
+package scheduler.service;
+
+import scheduler.cache.CaregiverLoad;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * Fewest booked appointments first; caregivers with the same count in username order.
+ */
+final class LeastLoadedAssignment implements AssignmentStrategy {
+
+    private final CaregiverLoad load = CaregiverLoad.getInstance();
+
+    @Override
+    public List<String> order(Date d, NavigableSet<String> free) {
+        // read every count once: they change while we sort, and a comparator must not
+        String[] names = free.toArray(new String[0]);
+        int[] counts = new int[names.length];
+        Integer[] positions = new Integer[names.length];
+        for (int i = 0; i < names.length; i++) {
+            counts[i] = load.get(names[i]);
+            positions[i] = i;
+        }
+        // stable, so ties keep username order
+        Arrays.sort(positions, Comparator.comparingInt(i -> counts[i]));
+        List<String> ordered = new ArrayList<>(names.length);
+        for (int i : positions) {
+            ordered.add(names[i]);
+        }
+        return ordered;
+    }
+}
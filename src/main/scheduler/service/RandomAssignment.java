@@ -0,0 +1,21 @@
+package scheduler.service;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A fresh random order for every reservation.
+ */
+final class RandomAssignment implements AssignmentStrategy {
+
+    @Override
+    public List<String> order(Date d, NavigableSet<String> free) {
+        List<String> caregivers = new ArrayList<>(free);
+        Collections.shuffle(caregivers, ThreadLocalRandom.current());
+        return caregivers;
+    }
+}
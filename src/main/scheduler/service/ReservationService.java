@@ -0,0 +1,246 @@
+package scheduler.service;
+
+import scheduler.cache.AvailabilityIndex;
+import scheduler.cache.CaregiverLoad;
+import scheduler.cache.ScheduleCache;
+import scheduler.cache.VaccineInventory;
+import scheduler.dao.AppointmentDao;
+import scheduler.dao.AppointmentRecord;
+import scheduler.dao.AvailabilityDao;
+import scheduler.dao.StorageBackend;
+import scheduler.dao.VaccineDao;
+import scheduler.db.IdAllocator;
+import scheduler.db.Transactions;
+import scheduler.journal.EventJournal;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Books and cancels appointments. Each operation claims the caregiver slot, adjusts the dose
+ * count and writes the appointment in one transaction, using conditional updates so concurrent
+ * patients can neither double-book a caregiver nor drive the dose count below zero.
+ */
+public class ReservationService {
+
+    private static final int ID_BLOCK_SIZE = 50;
+
+    private final AvailabilityIndex availability = AvailabilityIndex.getInstance();
+    private final VaccineInventory inventory = VaccineInventory.getInstance();
+    private final CaregiverLoad load = CaregiverLoad.getInstance();
+    private final ScheduleCache scheduleCache = ScheduleCache.getInstance();
+    private final EventJournal journal = EventJournal.getInstance();
+    private final AvailabilityDao availabilities = StorageBackend.getInstance().availabilities();
+    private final VaccineDao vaccines = StorageBackend.getInstance().vaccines();
+    private final AppointmentDao appointments = StorageBackend.getInstance().appointments();
+    private final IdAllocator appointmentIds =
+            new IdAllocator("Appointment", ID_BLOCK_SIZE, appointments.getSeedIdQuery());
+    private final AssignmentStrategy assignment;
+
+    /**
+     * Assigns caregivers with the strategy named by the AssignmentStrategy environment variable.
+     */
+    public ReservationService() {
+        this(AssignmentStrategy.forName(System.getenv("AssignmentStrategy")));
+    }
+
+    public ReservationService(AssignmentStrategy assignment) {
+        this.assignment = assignment;
+    }
+
+    public enum Status {
+        RESERVED,
+        NO_CAREGIVER,
+        NO_DOSES,
+        CANCELED,
+        NOT_FOUND
+    }
+
+    public static class Result {
+        private final Status status;
+        private final long appointmentId;
+        private final String caregiverUsername;
+        private final String vaccineName;
+        private final Date date;
+
+        private Result(Status status, long appointmentId, String caregiverUsername, String vaccineName, Date date) {
+            this.status = status;
+            this.appointmentId = appointmentId;
+            this.caregiverUsername = caregiverUsername;
+            this.vaccineName = vaccineName;
+            this.date = date;
+        }
+
+        private static Result of(Status status) {
+            return new Result(status, -1, null, null, null);
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getAppointmentId() {
+            return appointmentId;
+        }
+
+        public String getCaregiverUsername() {
+            return caregiverUsername;
+        }
+
+        public String getVaccineName() {
+            return vaccineName;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+    }
+
+    public Result reserve(String patientUsername, Date d, String vaccineName) throws SQLException {
+        // taken before the transaction starts: refilling a block needs its own write, which
+        // would otherwise wait on the lock this transaction holds
+        long appointmentId = appointmentIds.nextId();
+        // set once a dose is taken from the in-memory inventory; kept across retries
+        AtomicBoolean doseHeld = new AtomicBoolean(false);
+        // the caregiver whose load this attempt has counted, if any
+        AtomicReference<String> loadHeld = new AtomicReference<>();
+        // the journal sequence number of the attempt that committed
+        AtomicLong seq = new AtomicLong();
+        Result result;
+        try {
+            result = Transactions.run(con -> {
+                // a retry may claim someone else, so give back what the failed attempt counted
+                releaseLoad(loadHeld);
+                // write first (numbering the transaction for the journal, then claiming the slot),
+                // so on SQLite the transaction takes the write lock up front instead of failing
+                // on a lock upgrade later
+                seq.set(journal.begin(con));
+                String caregiver = claimCaregiver(con, d);
+                if (caregiver == null) {
+                    return Transactions.abort(con, Result.of(Status.NO_CAREGIVER));
+                }
+                // counted right away so concurrent reservations already steer around this caregiver
+                load.add(caregiver, 1);
+                loadHeld.set(caregiver);
+
+                if (!takeDose(con, vaccineName, doseHeld)) {
+                    return Transactions.abort(con, Result.of(Status.NO_DOSES));
+                }
+
+                appointments.insert(con, appointmentId, patientUsername, caregiver, vaccineName, d);
+                journal.end(con, seq.get());
+                return new Result(Status.RESERVED, appointmentId, caregiver, vaccineName, d);
+            });
+        } catch (SQLException e) {
+            if (doseHeld.get()) {
+                inventory.release(vaccineName, 1);
+                // a search may have rendered the count while the dose was held
+                scheduleCache.invalidateVaccines();
+            }
+            releaseLoad(loadHeld);
+            throw e;
+        }
+        if (result.getStatus() == Status.RESERVED) {
+            availability.remove(d, result.getCaregiverUsername());
+            scheduleCache.invalidate(d.toLocalDate());
+            scheduleCache.invalidateVaccines();
+            EventJournal.await(journal.reserved(seq.get(), appointmentId, patientUsername,
+                    result.getCaregiverUsername(), vaccineName, d));
+        } else {
+            if (doseHeld.get()) {
+                inventory.release(vaccineName, 1);
+                // a search may have rendered the count while the dose was held
+                scheduleCache.invalidateVaccines();
+            }
+            releaseLoad(loadHeld);
+        }
+        return result;
+    }
+
+    public Result cancel(long appointmentId) throws SQLException {
+        AtomicLong seq = new AtomicLong();
+        Result result = Transactions.run(con -> {
+            seq.set(journal.begin(con));
+            AppointmentRecord deleted = appointments.delete(con, appointmentId);
+            if (deleted == null) {
+                return Transactions.abort(con, Result.of(Status.NOT_FOUND));
+            }
+            Date d = deleted.getDate();
+            String vaccineName = deleted.getVaccineName();
+            String caregiver = deleted.getCaregiverUsername();
+
+            availabilities.restore(con, d, caregiver);
+
+            if (inventory.isLoaded()) {
+                inventory.recordDelta(con, vaccineName, 1);
+            } else {
+                vaccines.addDoses(con, vaccineName, 1);
+            }
+            journal.end(con, seq.get());
+            return new Result(Status.CANCELED, appointmentId, caregiver, vaccineName, d);
+        });
+        if (result.getStatus() == Status.CANCELED) {
+            availability.add(result.getDate(), result.getCaregiverUsername());
+            inventory.release(result.getVaccineName(), 1);
+            load.add(result.getCaregiverUsername(), -1);
+            scheduleCache.invalidate(result.getDate().toLocalDate());
+            scheduleCache.invalidateVaccines();
+            EventJournal.await(journal.canceled(seq.get(), appointmentId, result.getCaregiverUsername(),
+                    result.getVaccineName(), result.getDate()));
+        }
+        return result;
+    }
+
+    // Takes one dose inside the reservation transaction. With the inventory loaded the count is
+    // decremented in memory and the change is only appended to the ledger.
+    private boolean takeDose(Connection con, String vaccineName, AtomicBoolean doseHeld) throws SQLException {
+        if (inventory.isLoaded()) {
+            if (!doseHeld.get()) {
+                if (!inventory.tryReserve(vaccineName, 1)) {
+                    return false;
+                }
+                doseHeld.set(true);
+            }
+            inventory.recordDelta(con, vaccineName, -1);
+            return true;
+        }
+
+        return vaccines.takeDoses(con, vaccineName, 1);
+    }
+
+    // Deletes one availability row for the date and returns whose it was, or null if none is left.
+    private String claimCaregiver(Connection con, Date d) throws SQLException {
+        if (availability.isLoaded()) {
+            List<String> stale = new ArrayList<>();
+            String claimed = null;
+            for (String candidate : assignment.order(d, availability.caregivers(d))) {
+                if (availabilities.claim(con, d, candidate)) {
+                    claimed = candidate;
+                    break;
+                }
+                // already gone from the table, e.g. taken by a concurrent reservation
+                stale.add(candidate);
+            }
+            for (String username : stale) {
+                availability.remove(d, username);
+            }
+            return claimed;
+        }
+
+        // the index is not loaded: let the database pick the caregiver
+        return availabilities.claimFirst(con, d);
+    }
+
+    private void releaseLoad(AtomicReference<String> loadHeld) {
+        String caregiver = loadHeld.getAndSet(null);
+        if (caregiver != null) {
+            load.add(caregiver, -1);
+        }
+    }
+}
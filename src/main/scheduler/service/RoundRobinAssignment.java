@@ -0,0 +1,28 @@
+package scheduler.service;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Each reservation starts one caregiver further along the date's list than the last one did.
+ */
+final class RoundRobinAssignment implements AssignmentStrategy {
+
+    private final AtomicLong next = new AtomicLong();
+
+    @Override
+    public List<String> order(Date d, NavigableSet<String> free) {
+        List<String> caregivers = new ArrayList<>(free);
+        if (caregivers.isEmpty()) {
+            return caregivers;
+        }
+        int start = (int) Math.floorMod(next.getAndIncrement(), (long) caregivers.size());
+        List<String> ordered = new ArrayList<>(caregivers.size());
+        ordered.addAll(caregivers.subList(start, caregivers.size()));
+        ordered.addAll(caregivers.subList(0, start));
+        return ordered;
+    }
+}
@@ -1,43 +1,164 @@
 package scheduler.util;
 
+import scheduler.metrics.Metrics;
+
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class Util {
 
     // constants for handling password
     private static final int HASH_STRENGTH = 10;
     private static final int KEY_LENGTH = 16;
+    private static final String HASH_ALGORITHM = "PBKDF2WithHmacSHA1";
+
+    // SecureRandom is thread-safe and expensive to seed, so share one
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // SecretKeyFactory is not thread-safe; keep one per thread instead of a lookup per hash
+    private static final ThreadLocal<SecretKeyFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException();
+        }
+    });
+
+    // Hashing runs on a fixed pool sized to the machine. The queue is bounded and overflow runs
+    // on the caller, so a login storm cannot queue unbounded work or oversubscribe the CPUs.
+    private static final int HASH_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService HASH_EXECUTOR = new ThreadPoolExecutor(
+            HASH_THREADS, HASH_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(HASH_THREADS * 64),
+            r -> {
+                Thread t = new Thread(r, "password-hasher");
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
 
     public static byte[] generateSalt() {
         // Generate a random cryptographic salt
-        SecureRandom random = new SecureRandom();
         byte[] salt = new byte[16];
-        random.nextBytes(salt);
+        RANDOM.nextBytes(salt);
         return salt;
     }
 
     public static byte[] generateHash(String password, byte[] salt) {
+        long start = System.nanoTime();
         // Specify the hash parameters
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, HASH_STRENGTH, KEY_LENGTH);
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, HASH_STRENGTH, KEY_LENGTH);
 
         // Generate the hash
-        SecretKeyFactory factory = null;
-        byte[] hash = null;
+        byte[] hash;
         try {
-            factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            hash = factory.generateSecret(spec).getEncoded();
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
+            hash = FACTORY.get().generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException ex) {
             throw new IllegalStateException();
+        } finally {
+            spec.clearPassword();
         }
+
+        Metrics.getInstance().recordHash(System.nanoTime() - start);
         return hash;
     }
 
+    /**
+     * Computes the hash on the shared hashing pool.
+     */
+    public static CompletableFuture<byte[]> generateHashAsync(String password, byte[] salt) {
+        return CompletableFuture.supplyAsync(() -> generateHash(password, salt), HASH_EXECUTOR);
+    }
+
+    /**
+     * Generates a fresh salt and hashes the password with it on the shared hashing pool.
+     * Completes with {salt, hash}.
+     */
+    public static CompletableFuture<byte[][]> generateCredentialsAsync(String password) {
+        return CompletableFuture.supplyAsync(() -> {
+            byte[] salt = generateSalt();
+            return new byte[][]{salt, generateHash(password, salt)};
+        }, HASH_EXECUTOR);
+    }
+
+    /**
+     * Checks a password against a stored salt and hash on the shared hashing pool.
+     */
+    public static CompletableFuture<Boolean> verifyPasswordAsync(String password, byte[] salt, byte[] storedHash) {
+        return generateHashAsync(password, salt).thenApply(hash -> hashMatches(storedHash, hash));
+    }
+
+    /**
+     * Compares a stored hash with a freshly computed one. The database may pad the stored value
+     * with trailing zeros; they are ignored here instead of copying the array with trim().
+     * Runs in time independent of where the first difference is.
+     */
+    public static boolean hashMatches(byte[] stored, byte[] computed) {
+        int storedLength = stored.length;
+        while (storedLength > 0 && stored[storedLength - 1] == 0) {
+            storedLength--;
+        }
+        int computedLength = computed.length;
+        while (computedLength > 0 && computed[computedLength - 1] == 0) {
+            computedLength--;
+        }
+        int diff = storedLength ^ computedLength;
+        for (int i = 0; i < Math.min(storedLength, computedLength); i++) {
+            diff |= stored[i] ^ computed[i];
+        }
+        return diff == 0;
+    }
+
+    public static long getHashCount() {
+        return Metrics.getInstance().getHashing().getCount();
+    }
+
+    public static double getAverageHashMicros() {
+        return Metrics.getInstance().getHashing().getMean();
+    }
+
+    public static double getMaxHashMicros() {
+        return Metrics.getInstance().getHashing().getMax();
+    }
+
+    public static boolean isStrongPassword(String password) {
+        if (password.length() < 8) {
+            return false;
+        }
+
+        boolean hasUpper = false;
+        boolean hasLower = false;
+        boolean hasNumber = false;
+        boolean hasSpecial = false;
+
+        String specialCharacters = "!@#?";
+
+        for (int i = 0; i < password.length(); i++) {
+            char ch = password.charAt(i);
+
+            if (Character.isUpperCase(ch)) {
+                hasUpper = true;
+            } else if (Character.isLowerCase(ch)) {
+                hasLower = true;
+            } else if (Character.isDigit(ch)) {
+                hasNumber = true;
+            } else if (specialCharacters.indexOf(ch) != -1) {
+                hasSpecial = true;
+            }
+        }
+
+        return hasUpper && hasLower && hasNumber && hasSpecial;
+    }
+
     public static byte[] trim(byte[] bytes)
     {
         int i = bytes.length - 1;